@@ -0,0 +1,132 @@
+/*
+ * CacheBenchmark.java
+ * Oct 17, 2026
+ *
+ * Simple Web Server (SWS) for CSSE 477
+ *
+ * Copyright (C) 2012 Chandan Raj Rupakheti
+ *
+ * This program is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation, either
+ * version 3 of the License, or any later version.
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/lgpl.html>.
+ *
+ */
+
+
+package benchmark;
+
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import server.CachedFile;
+import server.ServerCache;
+
+/**
+ * Looks files up in the {@link ServerCache}.
+ * <ul>
+ * <li><tt>hit</tt> asks for a file that is always in the cache, and
+ * <tt>hitContended</tt> does so from many threads at once.</li>
+ * <li><tt>miss</tt> asks for a file larger than the cache, so it is read
+ * from disk every time and never kept.</li>
+ * <li><tt>eviction</tt> goes round a set of files four times the size of
+ * the cache, so every lookup reads a file and makes room for it, or turns
+ * it away.</li>
+ * </ul>
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class CacheBenchmark {
+	private static final int FILE_LENGTH = 4096;
+	private static final int CACHED_FILES = 32;
+	private static final int FILES = 4 * CACHED_FILES;
+
+	/**
+	 * Where a thread is in its round of the files.
+	 */
+	@State(Scope.Thread)
+	public static class Cursor {
+		private int next;
+	}
+
+	@Param({ "LRU", "TINY_LFU" })
+	public ServerCache.Policy policy;
+
+	private WebRoot root;
+	private File hot;
+	private File large;
+	private File[] files;
+	private ServerCache hitCache;
+	private ServerCache missCache;
+	private ServerCache evictionCache;
+
+	@Setup
+	public void setUp() throws Exception {
+		this.root = new WebRoot();
+		this.hot = this.root.create("hot.html", FILE_LENGTH);
+		this.large = this.root.create("large.html", 2 * FILE_LENGTH);
+		this.files = new File[FILES];
+		for (int i = 0; i < FILES; i++) {
+			this.files[i] = this.root.create("file" + i + ".html", FILE_LENGTH);
+		}
+
+		this.hitCache = new ServerCache(CACHED_FILES * FILE_LENGTH,
+				this.policy, 0);
+		this.hitCache.getFile(this.hot);
+		this.missCache = new ServerCache(FILE_LENGTH, this.policy, 0);
+		this.evictionCache = new ServerCache(CACHED_FILES * FILE_LENGTH,
+				this.policy, 0);
+	}
+
+	@TearDown
+	public void tearDown() {
+		this.root.delete();
+	}
+
+	@Benchmark
+	public CachedFile hit() {
+		return this.hitCache.getFile(this.hot);
+	}
+
+	@Benchmark
+	@Threads(8)
+	public CachedFile hitContended() {
+		return this.hitCache.getFile(this.hot);
+	}
+
+	@Benchmark
+	public CachedFile miss() {
+		return this.missCache.getFile(this.large);
+	}
+
+	@Benchmark
+	public CachedFile eviction(Cursor cursor) {
+		File file = this.files[cursor.next];
+		cursor.next = (cursor.next + 1) % FILES;
+		return this.evictionCache.getFile(file);
+	}
+}
@@ -0,0 +1,247 @@
+/*
+ * CacheStress.java
+ * Oct 17, 2026
+ *
+ * Simple Web Server (SWS) for CSSE 477
+ *
+ * Copyright (C) 2012 Chandan Raj Rupakheti
+ *
+ * This program is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation, either
+ * version 3 of the License, or any later version.
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/lgpl.html>.
+ *
+ */
+
+
+package benchmark;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPInputStream;
+
+import protocol.Protocol;
+import server.CachedFile;
+import server.FileWatcher;
+import server.ServerCache;
+
+/**
+ * Hammers one {@link ServerCache} from many threads with lookups, changes
+ * to the files and evictions, and checks that it never serves a version of
+ * a file older than one it was already told about. Run it with
+ *
+ * <pre>
+ * java -cp target/benchmarks.jar benchmark.CacheStress [seconds] [threads] [lru|tinylfu]
+ * </pre>
+ *
+ * Every file starts with a line naming its version. A writer thread
+ * replaces files with their next version, tells the cache the way the
+ * {@link FileWatcher} would, and only then publishes the new version.
+ * Readers note the published version before a lookup, and the version they
+ * get back, as it is or gzip compressed, must be at least that. The working
+ * set is four times the cache, so lookups keep evicting. At the end every
+ * file still cached must match the file on disk, and the cache must be
+ * within its budget. The exit status is 1 if any check failed.
+ */
+public class CacheStress {
+	private static final int FILES = 64;
+	private static final int MAX_FILE_LENGTH = 16 * 1024;
+
+	private File[] files;
+	private AtomicIntegerArray versions;
+	private ServerCache cache;
+	private volatile boolean running;
+	private AtomicLong lookups;
+	private AtomicLong changes;
+	private AtomicLong failures;
+
+	public static void main(String[] args) throws Exception {
+		int seconds = args.length > 0 ? Integer.parseInt(args[0]) : 10;
+		int threads = args.length > 1 ? Integer.parseInt(args[1]) : 2 * Runtime
+				.getRuntime().availableProcessors();
+		ServerCache.Policy policy = args.length > 2
+				&& args[2].equalsIgnoreCase("lru") ? ServerCache.Policy.LRU
+				: ServerCache.Policy.TINY_LFU;
+		boolean passed = new CacheStress().run(seconds, threads, policy);
+		System.exit(passed ? 0 : 1);
+	}
+
+	/**
+	 * Runs the readers and the writer and checks the cache afterwards.
+	 *
+	 * @return <tt>true</tt> if every check passed
+	 */
+	public boolean run(int seconds, int threads, ServerCache.Policy policy)
+			throws Exception {
+		WebRoot root = new WebRoot();
+		try {
+			this.files = new File[FILES];
+			this.versions = new AtomicIntegerArray(FILES);
+			long total = 0;
+			for (int i = 0; i < FILES; i++) {
+				this.files[i] = new File(root.getDirectory(), "file" + i
+						+ ".html");
+				total += write(i, 0);
+			}
+			this.cache = new ServerCache(total / 4, policy, 0);
+			this.lookups = new AtomicLong();
+			this.changes = new AtomicLong();
+			this.failures = new AtomicLong();
+			this.running = true;
+
+			List<Thread> readers = new ArrayList<Thread>();
+			for (int i = 0; i < threads; i++) {
+				Thread reader = new Thread("reader-" + i) {
+					public void run() {
+						read();
+					}
+				};
+				reader.start();
+				readers.add(reader);
+			}
+			Thread writer = new Thread("writer") {
+				public void run() {
+					change();
+				}
+			};
+			writer.start();
+
+			Thread.sleep(seconds * 1000L);
+			this.running = false;
+			writer.join();
+			for (Thread reader : readers) {
+				reader.join();
+			}
+
+			check();
+			System.out.printf("%s, %d threads, %d s: %d lookups, %d changes, "
+					+ "%d evictions, %d failures%n", policy, threads, seconds,
+					this.lookups.get(), this.changes.get(),
+					this.cache.getEvictionCount(), this.failures.get());
+			return this.failures.get() == 0;
+		} finally {
+			root.delete();
+		}
+	}
+
+	private void read() {
+		ThreadLocalRandom random = ThreadLocalRandom.current();
+		while (this.running) {
+			int i = random.nextInt(FILES);
+			int published = this.versions.get(i);
+			boolean gzip = random.nextInt(4) == 0;
+			CachedFile cached = gzip ? this.cache.getFile(this.files[i],
+					Protocol.GZIP) : this.cache.getFile(this.files[i]);
+			this.lookups.incrementAndGet();
+			if (cached == null) {
+				fail("no contents for file " + i);
+				continue;
+			}
+			int version = versionOf(cached, gzip);
+			if (version < published)
+				fail("file " + i + " served at version " + version
+						+ " after version " + published + " was reported");
+		}
+	}
+
+	private void change() {
+		ThreadLocalRandom random = ThreadLocalRandom.current();
+		while (this.running) {
+			int i = random.nextInt(FILES);
+			int version = this.versions.get(i) + 1;
+			try {
+				write(i, version);
+			} catch (IOException e) {
+				fail("cannot write file " + i + ": " + e);
+				return;
+			}
+			if (random.nextInt(100) == 0)
+				this.cache.allFilesChanged();
+			else
+				this.cache.fileChanged(FileWatcher.pathOf(this.files[i]));
+			this.versions.set(i, version);
+			this.changes.incrementAndGet();
+		}
+	}
+
+	/**
+	 * Checks that what is left in the cache is what is on disk, and that the
+	 * cache kept to its budget.
+	 */
+	private void check() throws IOException {
+		for (int i = 0; i < FILES; i++) {
+			CachedFile cached = this.cache.getFileIfPresent(this.files[i]);
+			if (cached != null && versionOf(cached, false) != this.versions.get(i))
+				fail("file " + i + " is cached at version "
+						+ versionOf(cached, false) + " but is at version "
+						+ this.versions.get(i) + " on disk");
+		}
+		if (this.cache.getSize() > this.cache.getMaxBytes())
+			fail("the cache holds " + this.cache.getSize() + " bytes of "
+					+ this.cache.getMaxBytes());
+	}
+
+	/**
+	 * Replaces a file in one step, so readers see either version whole.
+	 *
+	 * @return the length of the file
+	 */
+	private int write(int i, int version) throws IOException {
+		StringBuilder text = new StringBuilder("version " + version + "\n");
+		// Different lengths for different files, some of them compressible
+		int length = 1024 + (i * 997) % (MAX_FILE_LENGTH - 1024);
+		while (text.length() < length) {
+			text.append("file ").append(i).append(" line ").append(text.length())
+					.append('\n');
+		}
+		File temporary = new File(this.files[i].getPath() + ".tmp");
+		Files.write(temporary.toPath(), text.toString().getBytes(
+				StandardCharsets.US_ASCII));
+		Files.move(temporary.toPath(), this.files[i].toPath(),
+				StandardCopyOption.REPLACE_EXISTING,
+				StandardCopyOption.ATOMIC_MOVE);
+		return text.length();
+	}
+
+	private int versionOf(CachedFile cached, boolean gzip) {
+		ByteBuffer body = cached.getBody();
+		byte[] data = new byte[body.remaining()];
+		body.get(data);
+		try {
+			if (gzip && "gzip".equals(cached.getEncoding())) {
+				InputStream in = new GZIPInputStream(new ByteArrayInputStream(
+						data));
+				data = in.readNBytes(32);
+			}
+			String text = new String(data, 0, Math.min(data.length, 32),
+					StandardCharsets.US_ASCII);
+			return Integer.parseInt(text.substring("version ".length(),
+					text.indexOf('\n')));
+		} catch (Exception e) {
+			fail("unreadable contents: " + e);
+			return Integer.MAX_VALUE;
+		}
+	}
+
+	private void fail(String message) {
+		if (this.failures.incrementAndGet() <= 10)
+			System.err.println(message);
+	}
+}
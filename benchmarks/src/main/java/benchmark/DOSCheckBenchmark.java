@@ -0,0 +1,124 @@
+/*
+ * DOSCheckBenchmark.java
+ * Oct 17, 2026
+ *
+ * Simple Web Server (SWS) for CSSE 477
+ *
+ * Copyright (C) 2012 Chandan Raj Rupakheti
+ *
+ * This program is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation, either
+ * version 3 of the License, or any later version.
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/lgpl.html>.
+ *
+ */
+
+
+package benchmark;
+
+import java.net.InetAddress;
+import java.net.Socket;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import server.Server;
+import server.ServerConfig;
+
+/**
+ * Runs {@link Server#DOSCheck(Socket)} from 32 threads at once, as the
+ * accept loop would see it under a flood of connections.
+ * <ul>
+ * <li><tt>shared</tt> has every thread check the same address, so they all
+ * take tokens from one bucket of the rate limiter.</li>
+ * <li><tt>distinct</tt> gives each thread an address of its own.</li>
+ * <li><tt>banned</tt> checks an address on the blacklist, which is turned
+ * away before the rate limiter is asked.</li>
+ * </ul>
+ * The rate is set so high that no address goes over it, so the limiter is
+ * measured rather than the blacklist.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(32)
+@State(Scope.Benchmark)
+public class DOSCheckBenchmark {
+	private static final int RATE = 1000000000;
+
+	/**
+	 * The connection a thread checks. It is never connected, it only
+	 * reports the address of the client.
+	 */
+	@State(Scope.Thread)
+	public static class Client {
+		private Socket socket;
+
+		@Setup
+		public void setUp(DOSCheckBenchmark benchmark) throws Exception {
+			final InetAddress address = benchmark.nextAddress();
+			this.socket = new Socket() {
+				public InetAddress getInetAddress() {
+					return address;
+				}
+			};
+		}
+	}
+
+	@Param({ "shared", "distinct", "banned" })
+	public String addresses;
+
+	private WebRoot root;
+	private Server server;
+	private AtomicInteger threads;
+
+	@Setup
+	public void setUp() throws Exception {
+		System.setProperty(ServerConfig.RATE, Integer.toString(RATE));
+		this.root = new WebRoot();
+		this.server = new Server(this.root.getDirectory().getAbsolutePath(),
+				0, null);
+		this.threads = new AtomicInteger();
+	}
+
+	@TearDown
+	public void tearDown() {
+		this.root.delete();
+	}
+
+	private InetAddress nextAddress() throws Exception {
+		int thread = this.threads.getAndIncrement();
+		int host = "distinct".equals(this.addresses) ? thread : 0;
+		InetAddress address = InetAddress.getByAddress(new byte[] { 10, 0,
+				(byte) (host >> 8), (byte) host });
+		if ("banned".equals(this.addresses))
+			this.server.getBlacklist().ban(address, TimeUnit.HOURS.toMillis(1));
+		return address;
+	}
+
+	@Benchmark
+	public boolean check(Client client) {
+		return this.server.DOSCheck(client.socket);
+	}
+}
@@ -0,0 +1,119 @@
+/*
+ * RequestBenchmark.java
+ * Oct 17, 2026
+ *
+ * Simple Web Server (SWS) for CSSE 477
+ *
+ * Copyright (C) 2012 Chandan Raj Rupakheti
+ *
+ * This program is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation, either
+ * version 3 of the License, or any later version.
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/lgpl.html>.
+ *
+ */
+
+
+package benchmark;
+
+import java.io.ByteArrayInputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import protocol.HttpRequest;
+import protocol.HttpRequestParser;
+import protocol.Protocol;
+
+/**
+ * Parses request heads as they come from common clients.
+ * <p>
+ * {@link #read} goes through {@link HttpRequest#read(java.io.InputStream)},
+ * which builds a parser for every request. {@link #parse} reuses one parser,
+ * as a connection does for all of its requests. Both look at the fields the
+ * request processor reads, so the strings for them are built as they would
+ * be in the server.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class RequestBenchmark {
+	private static final String CURL = "GET /index.html HTTP/1.1\r\n"
+			+ "Host: localhost:8080\r\n"
+			+ "User-Agent: curl/8.5.0\r\n"
+			+ "Accept: */*\r\n"
+			+ "\r\n";
+
+	private static final String BROWSER = "GET /images/water.jpg HTTP/1.1\r\n"
+			+ "Host: www.rose-hulman.edu\r\n"
+			+ "Connection: keep-alive\r\n"
+			+ "User-Agent: Mozilla/5.0 (X11; Linux x86_64) AppleWebKit/537.36 "
+			+ "(KHTML, like Gecko) Chrome/120.0.0.0 Safari/537.36\r\n"
+			+ "Accept: image/avif,image/webp,image/apng,image/*,*/*;q=0.8\r\n"
+			+ "Referer: http://www.rose-hulman.edu/index.html\r\n"
+			+ "Accept-Encoding: gzip, deflate, br\r\n"
+			+ "Accept-Language: en-US,en;q=0.9\r\n"
+			+ "Cookie: session=5f2b8c1e9a7d4e3f; theme=dark\r\n"
+			+ "If-None-Match: \"18c8f3a2b40-a3b5\"\r\n"
+			+ "If-Modified-Since: Tue, 14 Nov 2023 08:12:31 GMT\r\n"
+			+ "\r\n";
+
+	@Param({ "curl", "browser" })
+	public String client;
+
+	private byte[] bytes;
+	private ByteBuffer buffer;
+	private HttpRequestParser parser;
+
+	@Setup
+	public void setUp() {
+		String head = "curl".equals(this.client) ? CURL : BROWSER;
+		this.bytes = head.getBytes(StandardCharsets.US_ASCII);
+		this.buffer = ByteBuffer.wrap(this.bytes);
+		this.parser = new HttpRequestParser();
+	}
+
+	@Benchmark
+	public void read(Blackhole blackhole) throws Exception {
+		HttpRequest request = HttpRequest.read(new ByteArrayInputStream(
+				this.bytes));
+		consume(request, blackhole);
+	}
+
+	@Benchmark
+	public void parse(Blackhole blackhole) throws Exception {
+		this.buffer.clear();
+		consume(this.parser.parse(this.buffer), blackhole);
+	}
+
+	private static void consume(HttpRequest request, Blackhole blackhole) {
+		blackhole.consume(request.getMethod());
+		blackhole.consume(request.getUri());
+		blackhole.consume(request.getVersion());
+		blackhole.consume(request.getHeader(Protocol.CONNECTION));
+		blackhole.consume(request.getHeader(Protocol.ACCEPT_ENCODING));
+		blackhole.consume(request.getHeader(Protocol.IF_NONE_MATCH));
+	}
+}
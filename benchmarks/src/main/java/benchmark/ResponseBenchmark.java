@@ -0,0 +1,126 @@
+/*
+ * ResponseBenchmark.java
+ * Oct 17, 2026
+ *
+ * Simple Web Server (SWS) for CSSE 477
+ *
+ * Copyright (C) 2012 Chandan Raj Rupakheti
+ *
+ * This program is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation, either
+ * version 3 of the License, or any later version.
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/lgpl.html>.
+ *
+ */
+
+
+package benchmark;
+
+import java.io.File;
+import java.io.OutputStream;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import protocol.HttpResponse;
+import protocol.HttpResponseFactory;
+import protocol.Protocol;
+import server.CachedFile;
+import server.ServerCache;
+
+/**
+ * Creates responses and writes them to a stream that throws the bytes away,
+ * so that only the work of the server is measured.
+ * <p>
+ * The <tt>file</tt> benchmarks build a response the way it is built for a
+ * file that is not in the cache, with every header field formatted for the
+ * request. The <tt>cached</tt> benchmarks start from the head block the
+ * cache keeps with the file, as the request processor does on a hit. The
+ * body is in the cache in both cases.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ResponseBenchmark {
+	@Param({ "1024", "65536" })
+	public int length;
+
+	private WebRoot root;
+	private File file;
+	private ServerCache cache;
+	private CachedFile cached;
+	private OutputStream sink;
+
+	@Setup
+	public void setUp() throws Exception {
+		this.root = new WebRoot();
+		this.file = this.root.create("index.html", this.length);
+		this.cache = new ServerCache(64L * 1024 * 1024,
+				ServerCache.Policy.TINY_LFU, 0);
+		this.cached = this.cache.getFile(this.file);
+		this.sink = OutputStream.nullOutputStream();
+	}
+
+	@TearDown
+	public void tearDown() {
+		this.root.delete();
+	}
+
+	@Benchmark
+	public void createFile(Blackhole blackhole) {
+		HttpResponse response = HttpResponseFactory.create200OK(this.file,
+				this.length, this.file.lastModified(), Protocol.OPEN);
+		blackhole.consume(response.getHeadBuffer());
+	}
+
+	@Benchmark
+	public void createCached(Blackhole blackhole) {
+		HttpResponse response = HttpResponseFactory.create200OK(
+				this.cached.getHeadBlock(), this.cached.getBody(),
+				Protocol.OPEN);
+		blackhole.consume(response.getHeadBuffers());
+	}
+
+	@Benchmark
+	public void writeFile() throws Exception {
+		HttpResponse response = HttpResponseFactory.create200OK(this.file,
+				this.length, this.file.lastModified(), Protocol.OPEN);
+		response.write(this.sink, this.cache);
+	}
+
+	@Benchmark
+	public void writeCached() throws Exception {
+		HttpResponse response = HttpResponseFactory.create200OK(
+				this.cached.getHeadBlock(), this.cached.getBody(),
+				Protocol.OPEN);
+		response.write(this.sink, this.cache);
+	}
+
+	@Benchmark
+	public void writeNotFound() throws Exception {
+		HttpResponse response = HttpResponseFactory
+				.create404NotFound(Protocol.OPEN);
+		response.write(this.sink, this.cache);
+	}
+}
@@ -0,0 +1,77 @@
+/*
+ * WebRoot.java
+ * Oct 17, 2026
+ *
+ * Simple Web Server (SWS) for CSSE 477
+ *
+ * Copyright (C) 2012 Chandan Raj Rupakheti
+ *
+ * This program is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation, either
+ * version 3 of the License, or any later version.
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/lgpl.html>.
+ *
+ */
+
+
+package benchmark;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+
+/**
+ * A web root of generated files in a temporary directory, for benchmarks
+ * that have to go through the file system.
+ */
+public class WebRoot {
+	private File directory;
+
+	public WebRoot() throws IOException {
+		this.directory = Files.createTempDirectory("sws-bench").toFile();
+	}
+
+	/**
+	 * Creates a file of printable text.
+	 *
+	 * @param name The name of the file in the web root.
+	 * @param length The length of the file in bytes.
+	 * @return the file
+	 * @throws IOException If the file cannot be written.
+	 */
+	public File create(String name, int length) throws IOException {
+		byte[] data = new byte[length];
+		for (int i = 0; i < length; i++) {
+			data[i] = (byte) (i % 64 == 63 ? '\n' : 'a' + i % 26);
+		}
+		File file = new File(this.directory, name);
+		Files.write(file.toPath(), data);
+		return file;
+	}
+
+	/**
+	 * @return the directory of the web root
+	 */
+	public File getDirectory() {
+		return this.directory;
+	}
+
+	/**
+	 * Deletes the files and the directory.
+	 */
+	public void delete() {
+		File[] files = this.directory.listFiles();
+		if (files != null) {
+			for (File file : files) {
+				file.delete();
+			}
+		}
+		this.directory.delete();
+	}
+}
@@ -30,6 +30,7 @@ import java.awt.event.WindowEvent;
 
 import javax.swing.*;
 
+import server.LatencyHistogram;
 import server.Server;
 
 /**
@@ -58,21 +59,27 @@ public class WebServer extends JFrame {
 	private ServiceRateUpdater rateUpdater;
 	
 	/**
-	 * For constantly updating the service rate in the GUI.
+	 * For constantly updating the request latency in the GUI. It shows the
+	 * percentiles of the requests answered since the last update, so that a
+	 * slow spell shows up right away instead of drowning in the average.
 	 * 
 	 * @author Chandan R. Rupakheti (rupakhet@rose-hulman.edu)
 	 */
 	private class ServiceRateUpdater implements Runnable {
 		public boolean stop = false;
 		public void run() {
+			LatencyHistogram.Snapshot previous = null;
 			while(!stop) {
 				// Poll if server is not null and server is still accepting connections
 				if(server != null && !server.isStoped()) {
-					double rate = server.getServiceRate();
-					if(rate == Double.MIN_VALUE)
-						WebServer.this.txtServiceRate.setText("Unknown");
-					else
-						WebServer.this.txtServiceRate.setText(Double.toString(rate));
+					LatencyHistogram.Snapshot current = server.getLatencies().getAll().snapshot();
+					LatencyHistogram.Snapshot interval = previous == null ? current : current.since(previous);
+					previous = current;
+					// Keep showing the last figures while no requests come in
+					if(interval.getCount() > 0)
+						WebServer.this.txtServiceRate.setText(formatMillis(interval.getPercentileNanos(50)) 
+								+ " / " + formatMillis(interval.getPercentileNanos(99)) 
+								+ " / " + formatMillis(interval.getPercentileNanos(99.9)));
 				}
 				
 				// Poll at an interval of 500 milliseconds
@@ -123,7 +130,7 @@ public class WebServer extends JFrame {
 		this.butStartServer = new JButton("Start Simple Web Server");
 		this.butStopServer = new JButton("Stop Simple Web Server");
 		this.butStopServer.setEnabled(false);
-		this.lblServiceRate = new JLabel("Service Rate (Connections Serviced/Second)");
+		this.lblServiceRate = new JLabel("Request Latency (p50 / p99 / p99.9 ms)");
 		this.txtServiceRate = new JTextField("Unknown");
 
 		// panelRunServer uses FlowLayout by default
@@ -144,6 +151,13 @@ public class WebServer extends JFrame {
 		pack();
 	}
 	
+	/**
+	 * Formats nanoseconds as milliseconds with up to three decimals.
+	 */
+	private static String formatMillis(long nanos) {
+		return String.format("%.3f", nanos / 1000000.0);
+	}
+	
 	private void addListeners() {
 		// Add the action to be done when select directory button is pressed
 		this.butSelect.addActionListener(new ActionListener() {
@@ -0,0 +1,214 @@
+/*
+ * ClientConnection.java
+ * Oct 17, 2026
+ *
+ * Simple Web Server (SWS) for CSSE 477
+ *
+ * Copyright (C) 2012 Chandan Raj Rupakheti
+ *
+ * This program is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation, either
+ * version 3 of the License, or any later version.
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/lgpl.html>.
+ *
+ */
+
+
+package loadgen;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+
+import protocol.Protocol;
+
+/**
+ * A client's connection to the server, on a blocking socket. It is opened
+ * when the first request is sent and opened again after either side closes
+ * it. Responses are read only as far as needed to find where they end; their
+ * bodies are counted and thrown away.
+ */
+public class ClientConnection {
+	private static final int BUFFER_LENGTH = 64 * 1024;
+
+	private InetSocketAddress address;
+	private Socket socket;
+	private InputStream in;
+	private OutputStream out;
+
+	private byte[] buffer;
+	private int position;
+	private int limit;
+
+	private long bytesRead;
+	private int connects;
+
+	/**
+	 * @param address The address the server is listening on.
+	 */
+	public ClientConnection(InetSocketAddress address) {
+		this.address = address;
+		this.buffer = new byte[BUFFER_LENGTH];
+	}
+
+	/**
+	 * Sends a request and reads the response to it. If the request or the
+	 * response closes the connection, it is closed afterwards.
+	 *
+	 * @param request The whole request head.
+	 * @param close <tt>true</tt> if the request asks to close the
+	 *            connection
+	 * @return the status code of the response
+	 * @throws IOException If the connection fails, in which case it is closed.
+	 */
+	public int send(byte[] request, boolean close) throws IOException {
+		try {
+			if (this.socket == null)
+				connect();
+			this.out.write(request);
+			this.out.flush();
+
+			int status = parseStatus(readLine());
+			long contentLength = -1;
+			String line;
+			while (!(line = readLine()).isEmpty()) {
+				int colon = line.indexOf(Protocol.SEPERATOR);
+				if (colon < 0)
+					continue;
+				String name = line.substring(0, colon).trim();
+				String value = line.substring(colon + 1).trim();
+				if (name.equalsIgnoreCase(Protocol.CONTENT_LENGTH))
+					contentLength = Long.parseLong(value);
+				else if (name.equalsIgnoreCase(Protocol.CONNECTION)
+						&& value.equalsIgnoreCase(Protocol.CLOSE))
+					close = true;
+			}
+
+			if (contentLength >= 0) {
+				skip(contentLength);
+			} else {
+				// Without a length the body ends with the connection
+				skipToEnd();
+				close = true;
+			}
+			if (close)
+				close();
+			return status;
+		} catch (IOException e) {
+			close();
+			throw e;
+		} catch (RuntimeException e) {
+			close();
+			throw new IOException("Malformed response", e);
+		}
+	}
+
+	private void connect() throws IOException {
+		this.socket = new Socket();
+		this.socket.setTcpNoDelay(true);
+		this.socket.connect(this.address);
+		this.in = this.socket.getInputStream();
+		this.out = this.socket.getOutputStream();
+		this.position = 0;
+		this.limit = 0;
+		this.connects++;
+	}
+
+	/**
+	 * Closes the connection, if it is open. The next request opens a new
+	 * one.
+	 */
+	public void close() {
+		if (this.socket == null)
+			return;
+		try {
+			this.socket.close();
+		} catch (IOException e) {
+			// It is being thrown away anyway
+		}
+		this.socket = null;
+	}
+
+	private static int parseStatus(String line) throws IOException {
+		// e.g. HTTP/1.1 200 OK
+		int start = line.indexOf(Protocol.SPACE);
+		if (start < 0 || line.length() < start + 4)
+			throw new IOException("Malformed status line: " + line);
+		return Integer.parseInt(line.substring(start + 1, start + 4));
+	}
+
+	/**
+	 * Reads a line of the head without its terminator.
+	 */
+	private String readLine() throws IOException {
+		StringBuilder line = new StringBuilder();
+		for (;;) {
+			if (this.position == this.limit && !fill())
+				throw new EOFException("Connection closed in a response head");
+			byte b = this.buffer[this.position++];
+			this.bytesRead++;
+			if (b == Protocol.LF)
+				break;
+			line.append((char) (b & 0xff));
+		}
+		int end = line.length();
+		if (end > 0 && line.charAt(end - 1) == Protocol.CR)
+			line.setLength(end - 1);
+		return line.toString();
+	}
+
+	private void skip(long length) throws IOException {
+		while (length > 0) {
+			if (this.position == this.limit && !fill())
+				throw new EOFException("Connection closed in a response body");
+			int count = (int) Math.min(length, this.limit - this.position);
+			this.position += count;
+			this.bytesRead += count;
+			length -= count;
+		}
+	}
+
+	private void skipToEnd() throws IOException {
+		do {
+			this.bytesRead += this.limit - this.position;
+			this.position = this.limit;
+		} while (fill());
+	}
+
+	/**
+	 * Reads more of the response into the buffer.
+	 *
+	 * @return <tt>false</tt> if the server closed the connection
+	 */
+	private boolean fill() throws IOException {
+		int count = this.in.read(this.buffer, 0, this.buffer.length);
+		if (count < 0)
+			return false;
+		this.position = 0;
+		this.limit = count;
+		return true;
+	}
+
+	/**
+	 * @return the number of bytes of responses read so far, heads included
+	 */
+	public long getBytesRead() {
+		return this.bytesRead;
+	}
+
+	/**
+	 * @return the number of times the connection was opened
+	 */
+	public int getConnectCount() {
+		return this.connects;
+	}
+}
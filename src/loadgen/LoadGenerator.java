@@ -0,0 +1,484 @@
+/*
+ * LoadGenerator.java
+ * Oct 17, 2026
+ *
+ * Simple Web Server (SWS) for CSSE 477
+ *
+ * Copyright (C) 2012 Chandan Raj Rupakheti
+ *
+ * This program is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation, either
+ * version 3 of the License, or any later version.
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/lgpl.html>.
+ *
+ */
+
+
+package loadgen;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.text.DecimalFormat;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+import protocol.Protocol;
+import server.LatencyHistogram;
+import server.Server;
+import server.ServerConfig;
+
+/**
+ * Starts a {@link Server} on a free port against a web root of generated
+ * files and puts load on it from a number of client connections, then
+ * reports throughput and latency percentiles. For example
+ *
+ * <pre>
+ * java -cp out loadgen.LoadGenerator --mode=eventloop --connections=64 --rate=20000
+ * </pre>
+ *
+ * Without a rate the load is a closed loop: each connection sends its next
+ * request as soon as the last response is in, so the server sets the pace.
+ * With a rate the load is an open loop: requests are due at a constant
+ * rate whether or not the server keeps up. A request that could not be sent
+ * on time, because every connection was still waiting for a response, is
+ * timed from when it was due and not from when it was sent. Otherwise a
+ * server that stalls would hold back the very requests that would have seen
+ * the stall, and the percentiles would hide it. Both timings are reported.
+ * <p>
+ * Options, all of the form <tt>--name=value</tt>:
+ * <dl>
+ * <dt>mode</dt>
+ * <dd>The execution mode of the server, as for {@link ServerConfig#MODE}.</dd>
+ * <dt>connections</dt>
+ * <dd>The number of client connections, 16 by default.</dd>
+ * <dt>rate</dt>
+ * <dd>Requests per second for an open loop, 0 for a closed loop.</dd>
+ * <dt>duration</dt>
+ * <dd>Seconds of load that are measured, 10 by default.</dd>
+ * <dt>warmup</dt>
+ * <dd>Seconds of load before that, which are not measured, 3 by default.</dd>
+ * <dt>keepalive</dt>
+ * <dd>The share of requests that keep the connection open, 1 by default. The
+ * others ask for it to be closed, and the next request opens a new one.</dd>
+ * <dt>mix</dt>
+ * <dd>File sizes and how often each is asked for, as
+ * <tt>bytes:weight,...</tt>. The default is mostly small pages with a few
+ * large files: <tt>1024:60,16384:30,262144:9,4194304:1</tt>.</dd>
+ * <dt>files</dt>
+ * <dd>The number of files of each size, 16 by default.</dd>
+ * </dl>
+ * The rate limit of the server is lifted, since all the load comes from one
+ * address. Other server settings are taken from the system properties as
+ * usual.
+ */
+public class LoadGenerator {
+	private static final String DEFAULT_MIX = "1024:60,16384:30,262144:9,4194304:1";
+	private static final int SERVER_START_MILLIS = 10000;
+	private static final double[] PERCENTILES = { 50, 90, 99, 99.9, 99.99 };
+
+	private String mode;
+	private int connections = 16;
+	private int rate;
+	private int durationSeconds = 10;
+	private int warmupSeconds = 3;
+	private double keepAlive = 1;
+	private String mix = DEFAULT_MIX;
+	private int filesPerSize = 16;
+
+	// The requests to choose from, by cumulative weight
+	private byte[][] keepAliveRequests;
+	private byte[][] closeRequests;
+	private int[] cumulativeWeights;
+
+	private long startNanos;
+	private long measureNanos;
+	private long endNanos;
+	private double intervalNanos;
+	private AtomicLong tickets;
+
+	private LatencyHistogram corrected;
+	private LatencyHistogram uncorrected;
+	private Map<Integer, LongAdder> statuses;
+	private LongAdder errors;
+	private LongAdder bytes;
+	private LongAdder connects;
+
+	public static void main(String[] args) throws Exception {
+		LoadGenerator generator = new LoadGenerator();
+		try {
+			generator.parse(args);
+		} catch (IllegalArgumentException e) {
+			System.err.println(e.getMessage());
+			System.err.println("Options: --mode= --connections= --rate= "
+					+ "--duration= --warmup= --keepalive= --mix= --files=");
+			System.exit(2);
+		}
+		generator.run();
+	}
+
+	/**
+	 * Reads the options.
+	 *
+	 * @param args The options, e.g. <tt>--connections=64</tt>.
+	 * @throws IllegalArgumentException If an option is unknown or its value
+	 *             is not usable.
+	 */
+	public void parse(String[] args) {
+		for (String arg : args) {
+			int equals = arg.indexOf('=');
+			if (!arg.startsWith("--") || equals < 0)
+				throw new IllegalArgumentException("Not an option: " + arg);
+			String name = arg.substring(2, equals);
+			String value = arg.substring(equals + 1);
+			try {
+				if (name.equals("mode"))
+					this.mode = value;
+				else if (name.equals("connections"))
+					this.connections = positive(Integer.parseInt(value), arg);
+				else if (name.equals("rate"))
+					this.rate = Integer.parseInt(value);
+				else if (name.equals("duration"))
+					this.durationSeconds = positive(Integer.parseInt(value), arg);
+				else if (name.equals("warmup"))
+					this.warmupSeconds = Integer.parseInt(value);
+				else if (name.equals("keepalive"))
+					this.keepAlive = Double.parseDouble(value);
+				else if (name.equals("mix"))
+					this.mix = value;
+				else if (name.equals("files"))
+					this.filesPerSize = positive(Integer.parseInt(value), arg);
+				else
+					throw new IllegalArgumentException("Unknown option: " + arg);
+			} catch (NumberFormatException e) {
+				throw new IllegalArgumentException("Not a number: " + arg);
+			}
+		}
+		if (this.rate < 0 || this.warmupSeconds < 0 || this.keepAlive < 0
+				|| this.keepAlive > 1)
+			throw new IllegalArgumentException("Out of range: "
+					+ String.join(" ", args));
+	}
+
+	private static int positive(int value, String arg) {
+		if (value <= 0)
+			throw new IllegalArgumentException("Must be positive: " + arg);
+		return value;
+	}
+
+	/**
+	 * Creates the web root, starts the server, puts the load on it and
+	 * reports the results.
+	 *
+	 * @throws Exception If the server cannot be started.
+	 */
+	public void run() throws Exception {
+		// The access log goes next to the web root, where changes to it do
+		// not reach the file watcher
+		File work = Files.createTempDirectory("sws-load").toFile();
+		File root = new File(work, "www");
+		try {
+			root.mkdir();
+			createFiles(root);
+
+			if (this.mode != null)
+				System.setProperty(ServerConfig.MODE, this.mode);
+			System.setProperty(ServerConfig.RATE, "1000000000");
+			if (System.getProperty(ServerConfig.ACCESS_LOG) == null)
+				System.setProperty(ServerConfig.ACCESS_LOG, new File(work,
+						"access.log").getAbsolutePath());
+
+			Server server = new Server(root.getAbsolutePath(), 0, null);
+			Thread serverThread = new Thread(server, "sws-server");
+			serverThread.start();
+			int port = waitForPort(server);
+			try {
+				load(new InetSocketAddress(InetAddress.getLoopbackAddress(),
+						port), server);
+			} finally {
+				server.stop();
+				serverThread.join(SERVER_START_MILLIS);
+			}
+		} finally {
+			delete(work);
+		}
+	}
+
+	/**
+	 * Writes the files of the mix and the requests for them.
+	 */
+	private void createFiles(File root) throws IOException {
+		List<byte[]> keepAlive = new ArrayList<byte[]>();
+		List<byte[]> close = new ArrayList<byte[]>();
+		List<Integer> weights = new ArrayList<Integer>();
+		int total = 0;
+		for (String part : this.mix.split(",")) {
+			String[] sizeAndWeight = part.trim().split(":");
+			int size;
+			int weight;
+			try {
+				size = Integer.parseInt(sizeAndWeight[0].trim());
+				weight = sizeAndWeight.length > 1 ? Integer
+						.parseInt(sizeAndWeight[1].trim()) : 1;
+			} catch (NumberFormatException e) {
+				throw new IllegalArgumentException("Not a file mix: " + this.mix);
+			}
+			if (size < 0 || weight <= 0 || sizeAndWeight.length > 2)
+				throw new IllegalArgumentException("Not a file mix: " + this.mix);
+
+			byte[] data = new byte[size];
+			for (int i = 0; i < size; i++) {
+				data[i] = (byte) (i % 64 == 63 ? '\n' : 'a' + i % 26);
+			}
+			for (int i = 0; i < this.filesPerSize; i++) {
+				String name = "file-" + size + "-" + i + ".html";
+				Files.write(new File(root, name).toPath(), data);
+				keepAlive.add(request(name, false));
+				close.add(request(name, true));
+				// The weight of the size is shared by its files
+				total += weight;
+				weights.add(total);
+			}
+		}
+		this.keepAliveRequests = keepAlive.toArray(new byte[0][]);
+		this.closeRequests = close.toArray(new byte[0][]);
+		this.cumulativeWeights = new int[weights.size()];
+		for (int i = 0; i < weights.size(); i++) {
+			this.cumulativeWeights[i] = weights.get(i);
+		}
+	}
+
+	private static byte[] request(String name, boolean close) {
+		String head = Protocol.GET + " /" + name + " " + Protocol.VERSION
+				+ Protocol.CRLF + "Host: localhost" + Protocol.CRLF;
+		if (close)
+			head += Protocol.CONNECTION + ": " + Protocol.CLOSE + Protocol.CRLF;
+		return (head + Protocol.CRLF).getBytes(StandardCharsets.US_ASCII);
+	}
+
+	private static int waitForPort(Server server) throws Exception {
+		long deadline = System.currentTimeMillis() + SERVER_START_MILLIS;
+		int port;
+		while ((port = server.getLocalPort()) <= 0) {
+			if (System.currentTimeMillis() > deadline)
+				throw new IOException("The server did not start listening");
+			Thread.sleep(10);
+		}
+		return port;
+	}
+
+	/**
+	 * Runs the connections for the warm-up and the measured time and prints
+	 * the results.
+	 */
+	private void load(InetSocketAddress address, Server server)
+			throws InterruptedException {
+		this.corrected = new LatencyHistogram();
+		this.uncorrected = new LatencyHistogram();
+		this.statuses = new TreeMap<Integer, LongAdder>();
+		this.errors = new LongAdder();
+		this.bytes = new LongAdder();
+		this.connects = new LongAdder();
+		this.tickets = new AtomicLong();
+		if (this.rate > 0)
+			this.intervalNanos = 1e9 / this.rate;
+
+		this.startNanos = System.nanoTime();
+		this.measureNanos = this.startNanos + this.warmupSeconds * 1000000000L;
+		this.endNanos = this.measureNanos + this.durationSeconds * 1000000000L;
+
+		List<Thread> threads = new ArrayList<Thread>();
+		for (int i = 0; i < this.connections; i++) {
+			final ClientConnection connection = new ClientConnection(address);
+			Thread thread = new Thread("sws-load-" + i) {
+				public void run() {
+					drive(connection);
+				}
+			};
+			thread.start();
+			threads.add(thread);
+		}
+
+		// Leave out what the server saw during the warm-up as well
+		LockSupport.parkNanos(this.measureNanos - System.nanoTime());
+		LatencyHistogram.Snapshot serverStart = server.getLatencies().getAll()
+				.snapshot();
+		for (Thread thread : threads) {
+			thread.join();
+		}
+		LatencyHistogram.Snapshot serverLatencies = server.getLatencies()
+				.getAll().snapshot().since(serverStart);
+		report(serverLatencies);
+	}
+
+	/**
+	 * Sends requests on one connection until the time is up.
+	 */
+	private void drive(ClientConnection connection) {
+		ThreadLocalRandom random = ThreadLocalRandom.current();
+		int totalWeight = this.cumulativeWeights[this.cumulativeWeights.length - 1];
+		long bytesBefore = 0;
+		int connectsBefore = 0;
+		for (;;) {
+			long due;
+			if (this.rate > 0) {
+				due = this.startNanos
+						+ (long) (this.tickets.getAndIncrement() * this.intervalNanos);
+				// Requests still overdue when the time is up are not sent
+				if (due >= this.endNanos || System.nanoTime() >= this.endNanos)
+					break;
+				long wait;
+				while ((wait = due - System.nanoTime()) > 0) {
+					LockSupport.parkNanos(wait);
+				}
+			} else {
+				due = System.nanoTime();
+				if (due >= this.endNanos)
+					break;
+			}
+
+			int file = pick(random.nextInt(totalWeight));
+			boolean close = random.nextDouble() >= this.keepAlive;
+			byte[] request = close ? this.closeRequests[file]
+					: this.keepAliveRequests[file];
+			long sent = System.nanoTime();
+			int status;
+			try {
+				status = connection.send(request, close);
+			} catch (IOException e) {
+				status = -1;
+			}
+			long done = System.nanoTime();
+			long bytesRead = connection.getBytesRead() - bytesBefore;
+			int connectCount = connection.getConnectCount() - connectsBefore;
+			bytesBefore += bytesRead;
+			connectsBefore += connectCount;
+
+			if (due < this.measureNanos)
+				continue;
+			this.corrected.record(done - due);
+			this.uncorrected.record(done - sent);
+			if (status < 0)
+				this.errors.increment();
+			else
+				count(status);
+			this.bytes.add(bytesRead);
+			this.connects.add(connectCount);
+		}
+		connection.close();
+	}
+
+	/**
+	 * Finds the request a random weight falls on.
+	 */
+	private int pick(int weight) {
+		int low = 0;
+		int high = this.cumulativeWeights.length - 1;
+		while (low < high) {
+			int middle = (low + high) >>> 1;
+			if (this.cumulativeWeights[middle] > weight)
+				high = middle;
+			else
+				low = middle + 1;
+		}
+		return low;
+	}
+
+	private void count(int status) {
+		LongAdder adder;
+		synchronized (this.statuses) {
+			adder = this.statuses.get(status);
+			if (adder == null) {
+				adder = new LongAdder();
+				this.statuses.put(status, adder);
+			}
+		}
+		adder.increment();
+	}
+
+	private void report(LatencyHistogram.Snapshot serverLatencies) {
+		LatencyHistogram.Snapshot latencies = this.corrected.snapshot();
+		long requests = latencies.getCount();
+		double seconds = this.durationSeconds;
+
+		System.out.printf(Locale.US, "Mode %s, %d connections, %s, "
+				+ "keep-alive %.0f%%, %d s after %d s of warm-up%n",
+				this.mode == null ? ServerConfig.getExecutionMode().getName()
+						: this.mode, this.connections,
+				this.rate > 0 ? "open loop at " + this.rate + " requests/s"
+						: "closed loop", this.keepAlive * 100,
+				this.durationSeconds, this.warmupSeconds);
+		System.out.printf(Locale.US,
+				"Requests %d (%.1f/s), %.1f MB/s, %d connections opened%n",
+				requests, requests / seconds, this.bytes.sum() / seconds
+						/ (1024 * 1024), this.connects.sum());
+		StringBuilder statusLine = new StringBuilder("Responses");
+		synchronized (this.statuses) {
+			for (Map.Entry<Integer, LongAdder> entry : this.statuses.entrySet()) {
+				statusLine.append(' ').append(entry.getKey()).append(": ")
+						.append(entry.getValue().sum());
+			}
+		}
+		statusLine.append(", errors: ").append(this.errors.sum());
+		System.out.println(statusLine);
+		if (this.rate > 0 && requests < 0.95 * this.rate * seconds)
+			System.out.printf(Locale.US, "Fell behind: %.1f%% of the rate was "
+					+ "sent, add connections or lower the rate%n", 100.0
+					* requests / (this.rate * seconds));
+
+		StringBuilder header = new StringBuilder(String.format(Locale.US,
+				"%-18s%10s", "Latency (ms)", "mean"));
+		for (double percentile : PERCENTILES) {
+			header.append(String.format(Locale.US, "%10s", "p"
+					+ new DecimalFormat("0.##").format(percentile)));
+		}
+		header.append(String.format(Locale.US, "%10s", "max"));
+		System.out.println(header);
+		if (this.rate > 0) {
+			printLatencies("client, corrected", latencies);
+			printLatencies("client, as sent", this.uncorrected.snapshot());
+		} else {
+			printLatencies("client", latencies);
+		}
+		printLatencies("server", serverLatencies);
+	}
+
+	private static void printLatencies(String name,
+			LatencyHistogram.Snapshot latencies) {
+		StringBuilder line = new StringBuilder(String.format(Locale.US,
+				"%-18s%10.3f", name, latencies.getMeanNanos() / 1e6));
+		for (double percentile : PERCENTILES) {
+			line.append(String.format(Locale.US, "%10.3f",
+					latencies.getPercentileNanos(percentile) / 1e6));
+		}
+		line.append(String.format(Locale.US, "%10.3f",
+				latencies.getMaxNanos() / 1e6));
+		System.out.println(line);
+	}
+
+	private static void delete(File file) {
+		File[] files = file.listFiles();
+		if (files != null) {
+			for (File child : files) {
+				delete(child);
+			}
+		}
+		file.delete();
+	}
+}
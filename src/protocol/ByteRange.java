@@ -0,0 +1,182 @@
+/*
+ * ByteRange.java
+ * Oct 17, 2026
+ *
+ * Simple Web Server (SWS) for CSSE 477
+ *
+ * Copyright (C) 2012 Chandan Raj Rupakheti
+ *
+ * This program is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation, either
+ * version 3 of the License, or any later version.
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/lgpl.html>.
+ *
+ */
+
+package protocol;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A range of bytes of a file that a client asked for with the
+ * {@link Protocol#RANGE} header field. Both ends are inclusive, as in the
+ * field itself.
+ */
+public class ByteRange {
+	/**
+	 * The most ranges we serve in one response. Requests for more get the
+	 * whole file.
+	 */
+	public static final int MAX_RANGES = 16;
+
+	private long start;
+	private long end;
+
+	public ByteRange(long start, long end) {
+		this.start = start;
+		this.end = end;
+	}
+
+	/**
+	 * @return the offset of the first byte
+	 */
+	public long getStart() {
+		return start;
+	}
+
+	/**
+	 * @return the offset of the last byte
+	 */
+	public long getEnd() {
+		return end;
+	}
+
+	/**
+	 * @return the number of bytes in the range
+	 */
+	public long getLength() {
+		return end - start + 1;
+	}
+
+	/**
+	 * Gets the value of the {@link Protocol#CONTENT_RANGE} field for this
+	 * range, e.g. <tt>bytes 0-499/1234</tt>.
+	 *
+	 * @param length The length of the whole file.
+	 * @return the field value
+	 */
+	public String toContentRange(long length) {
+		return Protocol.BYTES + Protocol.SPACE + start + "-" + end
+				+ Protocol.SLASH + length;
+	}
+
+	/**
+	 * Gets the range out of the contents of the whole file without copying
+	 * them.
+	 *
+	 * @param whole The contents of the whole file, from its position on.
+	 * @return a buffer over just the bytes of the range
+	 */
+	public ByteBuffer slice(ByteBuffer whole) {
+		ByteBuffer slice = whole.duplicate();
+		int base = whole.position();
+		slice.position(base + (int) start);
+		slice.limit(base + (int) end + 1);
+		return slice;
+	}
+
+	/**
+	 * Parses the value of a {@link Protocol#RANGE} field, e.g.
+	 * <tt>bytes=0-499,1000-</tt> or <tt>bytes=-500</tt>.
+	 *
+	 * @param value The value of the field.
+	 * @param length The length of the whole file.
+	 * @return The ranges that lie within the file, in the order asked for;
+	 *         an empty list if none does; or <tt>null</tt> if the field is
+	 *         malformed, holds no range, asks for too much, or is not in
+	 *         bytes, in which case it should be ignored.
+	 */
+	public static List<ByteRange> parse(String value, long length) {
+		value = value.trim();
+		String prefix = Protocol.BYTES + "=";
+		if (!value.regionMatches(true, 0, prefix, 0, prefix.length()))
+			return null;
+
+		List<ByteRange> ranges = new ArrayList<ByteRange>();
+		long total = 0;
+		int count = 0;
+		for (String spec : value.substring(prefix.length()).split(",")) {
+			spec = spec.trim();
+			if (spec.isEmpty())
+				continue;
+			if (++count > MAX_RANGES)
+				return null;
+
+			int dash = spec.indexOf('-');
+			if (dash < 0)
+				return null;
+			long start;
+			long end;
+			if (dash == 0) {
+				// The last so many bytes
+				long suffix = parseNumber(spec.substring(1));
+				if (suffix < 0)
+					return null;
+				if (suffix == 0)
+					continue;
+				start = Math.max(0, length - suffix);
+				end = length - 1;
+			} else {
+				start = parseNumber(spec.substring(0, dash));
+				if (start < 0)
+					return null;
+				if (dash == spec.length() - 1) {
+					// From the start to the end of the file
+					end = length - 1;
+				} else {
+					end = parseNumber(spec.substring(dash + 1));
+					if (end < start)
+						return null;
+					end = Math.min(end, length - 1);
+				}
+			}
+			if (start >= length)
+				continue;
+
+			// Overlapping ranges could make us send the file many times over
+			total += end - start + 1;
+			if (total > length)
+				return null;
+			ranges.add(new ByteRange(start, end));
+		}
+		// Without a single range there is nothing to satisfy or not
+		if (count == 0)
+			return null;
+		return ranges;
+	}
+
+	/**
+	 * @return the number, or -1 if the text is not a plain decimal number
+	 */
+	private static long parseNumber(String text) {
+		text = text.trim();
+		if (text.isEmpty() || text.length() > 18)
+			return -1;
+		long number = 0;
+		for (int i = 0; i < text.length(); i++) {
+			char c = text.charAt(i);
+			if (c < '0' || c > '9')
+				return -1;
+			number = number * 10 + (c - '0');
+		}
+		return number;
+	}
+}
@@ -0,0 +1,82 @@
+/*
+ * HttpDate.java
+ * Oct 17, 2026
+ *
+ * Simple Web Server (SWS) for CSSE 477
+ *
+ * Copyright (C) 2012 Chandan Raj Rupakheti
+ *
+ * This program is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation, either
+ * version 3 of the License, or any later version.
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/lgpl.html>.
+ *
+ */
+
+package protocol;
+
+import java.nio.charset.StandardCharsets;
+
+import server.GMTConversion;
+
+/**
+ * The value of the {@link Protocol#DATE} header field. HTTP dates only have
+ * whole seconds, so the value is formatted and encoded at most once per
+ * second and shared by every response sent within that second.
+ */
+public class HttpDate {
+	/**
+	 * A formatted second. It never changes, so threads can share it without
+	 * locking; a thread that sees an old one formats the new second itself.
+	 */
+	private static class Second {
+		private final long second;
+		private final String text;
+		private final byte[] line;
+
+		public Second(long second) {
+			this.second = second;
+			this.text = GMTConversion.toGMTString(second * 1000L);
+			this.line = (Protocol.DATE + Protocol.SEPERATOR + Protocol.SPACE
+					+ this.text + Protocol.CRLF)
+					.getBytes(StandardCharsets.ISO_8859_1);
+		}
+	}
+
+	private static volatile Second current = new Second(
+			System.currentTimeMillis() / 1000L);
+
+	/**
+	 * Gets the current time in the HTTP date format.
+	 *
+	 * @return e.g. <tt>Sun, 06 Nov 1994 08:49:37 GMT</tt>
+	 */
+	public static String now() {
+		long second = System.currentTimeMillis() / 1000L;
+		Second date = current;
+		if (date.second != second) {
+			date = new Second(second);
+			current = date;
+		}
+		return date.text;
+	}
+
+	/**
+	 * Gets the encoded header field line for a date from {@link #now()}, if
+	 * it is still the current one.
+	 *
+	 * @param text The value of the field.
+	 * @return the line including its CRLF, not to be modified, or
+	 *         <tt>null</tt> if the date is not the current one
+	 */
+	static byte[] lineOf(String text) {
+		Second date = current;
+		return date.text.equals(text) ? date.line : null;
+	}
+}
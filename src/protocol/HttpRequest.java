@@ -22,27 +22,83 @@
  
 package protocol;
 
-import java.io.BufferedReader;
 import java.io.InputStream;
-import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
-import java.util.StringTokenizer;
 
 /**
  * Represents a request object for HTTP.
+ * <p>
+ * A request is filled in by a {@link HttpRequestParser} and refers to the
+ * bytes of the request head held by the parser. The method, URI, version and
+ * header values are only turned into strings when they are asked for.
  * 
  * @author Chandan R. Rupakheti (rupakhet@rose-hulman.edu)
  */
 public class HttpRequest {
+	private byte[] head;
+	private int[] line;
+	private int[] fields;
+	private int fieldCount;
+
 	private String method;
 	private String uri;
 	private String version;
 	private Map<String, String> header;
 	
-	private HttpRequest() {
-		this.header = new HashMap<String, String>();
+	HttpRequest(byte[] head) {
+		this.head = head;
+		this.line = new int[6];
+		this.fields = new int[4 * 16];
+	}
+
+	/**
+	 * Forgets the previous request so that the object can be filled again.
+	 */
+	void reset(byte[] head) {
+		this.head = head;
+		this.fieldCount = 0;
+		this.method = null;
+		this.uri = null;
+		this.version = null;
+		this.header = null;
+	}
+
+	/**
+	 * Called when the parser moved the head into a larger array.
+	 */
+	void setHead(byte[] head) {
+		this.head = head;
+	}
+
+	/**
+	 * Records the start and end of method, URI and version.
+	 */
+	void setRequestLine(int[] bounds) {
+		System.arraycopy(bounds, 0, this.line, 0, this.line.length);
+	}
+
+	/**
+	 * Records the start and end of the name and the value of a header field.
+	 */
+	void addField(int nameStart, int nameEnd, int valueStart, int valueEnd) {
+		int i = 4 * this.fieldCount;
+		if (i == this.fields.length) {
+			int[] larger = new int[2 * this.fields.length];
+			System.arraycopy(this.fields, 0, larger, 0, i);
+			this.fields = larger;
+		}
+		this.fields[i] = nameStart;
+		this.fields[i + 1] = nameEnd;
+		this.fields[i + 2] = valueStart;
+		this.fields[i + 3] = valueEnd;
+		this.fieldCount++;
+	}
+
+	int getFieldCount() {
+		return this.fieldCount;
 	}
 	
 	/**
@@ -51,6 +107,10 @@ public class HttpRequest {
 	 * @return the method
 	 */
 	public String getMethod() {
+		if (method == null) {
+			method = matches(line[0], line[1], Protocol.GET) ? Protocol.GET
+					: text(line[0], line[1]);
+		}
 		return method;
 	}
 
@@ -60,6 +120,10 @@ public class HttpRequest {
 	 * @return the uri
 	 */
 	public String getUri() {
+		if (uri == null) {
+			uri = new String(head, line[2], line[3] - line[2],
+					StandardCharsets.UTF_8);
+		}
 		return uri;
 	}
 
@@ -68,22 +132,83 @@ public class HttpRequest {
 	 * @return the version
 	 */
 	public String getVersion() {
+		if (version == null) {
+			version = matches(line[4], line[5], Protocol.VERSION) ? Protocol.VERSION
+					: text(line[4], line[5]);
+		}
 		return version;
 	}
 
 	/**
-	 * The key to value mapping in the request header fields.
+	 * Looks up a single header field without building the whole header map.
+	 * If the field occurs more than once the last value is returned.
+	 * 
+	 * @param name The name of the field, in any case.
+	 * @return the value, or <tt>null</tt> if the request has no such field
+	 */
+	public String getHeader(String name) {
+		for (int i = 4 * (fieldCount - 1); i >= 0; i -= 4) {
+			if (equalsIgnoreCase(fields[i], fields[i + 1], name))
+				return text(fields[i + 2], fields[i + 3]);
+		}
+		return null;
+	}
+
+	/**
+	 * The key to value mapping in the request header fields. The keys are in
+	 * lower case.
 	 * 
 	 * @return the header
 	 */
 	public Map<String, String> getHeader() {
+		if (header == null) {
+			header = new HashMap<String, String>();
+			for (int i = 0; i < 4 * fieldCount; i += 4) {
+				header.put(text(fields[i], fields[i + 1]).toLowerCase(),
+						text(fields[i + 2], fields[i + 3]));
+			}
+		}
 		// Lets return the unmodifable view of the header map
 		return Collections.unmodifiableMap(header);
 	}
 
+	private String text(int start, int end) {
+		return new String(head, start, end - start, StandardCharsets.ISO_8859_1);
+	}
+
+	private boolean matches(int start, int end, String value) {
+		if (end - start != value.length())
+			return false;
+		for (int i = 0; i < value.length(); i++) {
+			if (head[start + i] != value.charAt(i))
+				return false;
+		}
+		return true;
+	}
+
+	private boolean equalsIgnoreCase(int start, int end, String value) {
+		if (end - start != value.length())
+			return false;
+		for (int i = 0; i < value.length(); i++) {
+			int a = head[start + i];
+			int b = value.charAt(i);
+			if (a != b && toLowerCase(a) != toLowerCase(b))
+				return false;
+		}
+		return true;
+	}
+
+	private static int toLowerCase(int c) {
+		return c >= 'A' && c <= 'Z' ? c + ('a' - 'A') : c;
+	}
+
 	/**
 	 * Reads raw data from the supplied input stream and constructs a 
 	 * <tt>HttpRequest</tt> object out of the raw data.
+	 * <p>
+	 * The parser used here is thrown away together with any bytes it read
+	 * past the request, so connections that carry more than one request
+	 * should keep a {@link HttpRequestParser} instead.
 	 * 
 	 * @param inputStream The input stream to read from.
 	 * @return A <tt>HttpRequest</tt> object.
@@ -91,67 +216,10 @@ public class HttpRequest {
 	 * {@link IOException} for socket input stream read errors.
 	 */
 	public static HttpRequest read(InputStream inputStream) throws Exception {
-		// We will fill this object with the data from input stream and return it
-		HttpRequest request = new HttpRequest();
-		
-		InputStreamReader inStreamReader = new InputStreamReader(inputStream);
-		BufferedReader reader = new BufferedReader(inStreamReader);
-		//First Request Line: GET /somedir/page.html HTTP/1.1
-		String line = reader.readLine(); // A line ends with either a \r, or a \n, or both
-		
-		if(line == null) {
+		HttpRequest request = new HttpRequestParser().read(inputStream);
+		if(request == null) {
 			throw new ProtocolException(Protocol.BAD_REQUEST_CODE, Protocol.BAD_REQUEST_TEXT);
 		}
-		
-		// We will break this line using space as delimeter into three parts
-		StringTokenizer tokenizer = new StringTokenizer(line, " ");
-		
-		// Error checking the first line must have exactly three elements
-		if(tokenizer.countTokens() != 3) {
-			throw new ProtocolException(Protocol.BAD_REQUEST_CODE, Protocol.BAD_REQUEST_TEXT);
-		}
-		
-		request.method = tokenizer.nextToken();		// GET
-		request.uri = tokenizer.nextToken();		// /somedir/page.html
-		request.version = tokenizer.nextToken();	// HTTP/1.1
-		
-		// Rest of the request is a header that maps keys to values
-		// e.g. Host: www.rose-hulman.edu
-		// We will convert both the strings to lower case to be able to search later
-		line = reader.readLine().trim();
-		
-		while(!line.equals("")) {
-			// THIS IS A PATCH 
-			// Instead of a string tokenizer, we are using string split
-			// Lets break the line into two part with first space as a separator 
-			
-			// First lets trim the line to remove escape characters
-			line = line.trim();
-			
-			// Now, get index of the first occurrence of space
-			int index = line.indexOf(' ');
-			
-			if(index > 0 && index < line.length()-1) {
-				// Now lets break the string in two parts
-				String key = line.substring(0, index); // Get first part, e.g. "Host:"
-				String value = line.substring(index+1); // Get the rest, e.g. "www.rose-hulman.edu"
-				
-				// Lets strip off the white spaces from key if any and change it to lower case
-				key = key.trim().toLowerCase();
-				
-				// Lets also remove ":" from the key
-				key = key.substring(0, key.length() - 1);
-				
-				// Lets strip white spaces if any from value as well
-				value = value.trim();
-				
-				// Now lets put the key=>value mapping to the header map
-				request.header.put(key, value);
-			}
-			
-			// Processed one more line, now lets read another header line and loop
-			line = reader.readLine().trim();
-		}
 		return request;
 	}
 	
@@ -160,14 +228,14 @@ public class HttpRequest {
 	public String toString() {
 		StringBuffer buffer = new StringBuffer();
 		buffer.append("----------------------------------\n");
-		buffer.append(this.method);
+		buffer.append(this.getMethod());
 		buffer.append(Protocol.SPACE);
-		buffer.append(this.uri);
+		buffer.append(this.getUri());
 		buffer.append(Protocol.SPACE);
-		buffer.append(this.version);
+		buffer.append(this.getVersion());
 		buffer.append(Protocol.LF);
 		
-		for(Map.Entry<String, String> entry : this.header.entrySet()) {
+		for(Map.Entry<String, String> entry : this.getHeader().entrySet()) {
 			buffer.append(entry.getKey());
 			buffer.append(Protocol.SEPERATOR);
 			buffer.append(Protocol.SPACE);
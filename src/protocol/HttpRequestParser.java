@@ -0,0 +1,259 @@
+/*
+ * HttpRequestParser.java
+ * Oct 17, 2026
+ *
+ * Simple Web Server (SWS) for CSSE 477
+ *
+ * Copyright (C) 2012 Chandan Raj Rupakheti
+ *
+ * This program is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation, either
+ * version 3 of the License, or any later version.
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/lgpl.html>.
+ *
+ */
+
+package protocol;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * Parses request heads byte by byte. A parser belongs to one connection and
+ * is fed whatever has arrived so far; it remembers where it stopped, so a
+ * head may come in any number of pieces. The bytes of the head are kept in
+ * an array that is reused for every request on the connection, and the
+ * {@link HttpRequest} it returns only records where the method, URI, version
+ * and header fields are in that array.
+ * <p>
+ * Because of that, a request is only valid until the parser is asked for
+ * the next one.
+ */
+public class HttpRequestParser {
+	/**
+	 * The longest request line or header line we accept.
+	 */
+	public static final int MAX_LINE_LENGTH = 8192;
+
+	/**
+	 * The longest request head we accept.
+	 */
+	public static final int MAX_HEAD_LENGTH = 16 * Protocol.CHUNK_LENGTH;
+
+	/**
+	 * The most header fields we accept in one request.
+	 */
+	public static final int MAX_HEADER_COUNT = 100;
+
+	private static final int REQUEST_LINE = 0;
+	private static final int HEADER_LINE = 1;
+	private static final int COMPLETE = 2;
+
+	private int state;
+	private byte[] head;
+	private int[] bounds;
+	private int length;
+	private int lineStart;
+	private HttpRequest request;
+
+	// Only used when reading from a stream
+	private ByteBuffer buffer;
+
+	public HttpRequestParser() {
+		this.head = new byte[Protocol.CHUNK_LENGTH];
+		this.bounds = new int[6];
+		this.request = new HttpRequest(this.head);
+		this.state = REQUEST_LINE;
+	}
+
+	/**
+	 * Consumes bytes from the buffer until a request head is complete or the
+	 * buffer is empty. Bytes after the end of the head are left in the
+	 * buffer for the next request.
+	 *
+	 * @param in The bytes that have arrived, ready to be read from.
+	 * @return The request, or <tt>null</tt> if more bytes are needed.
+	 * @throws ProtocolException If the request is malformed or too large.
+	 */
+	public HttpRequest parse(ByteBuffer in) throws ProtocolException {
+		if (this.state == COMPLETE)
+			reset();
+
+		while (in.hasRemaining()) {
+			byte b = in.get();
+			if (this.length == this.head.length)
+				grow();
+			this.head[this.length++] = b;
+
+			if (b != Protocol.LF) {
+				if (this.length - this.lineStart > MAX_LINE_LENGTH)
+					throw new ProtocolException(Protocol.BAD_REQUEST_CODE,
+							"Line too long");
+				continue;
+			}
+
+			// Strip the line terminator, which is either CRLF or a bare LF
+			int end = this.length - 1;
+			if (end > this.lineStart && this.head[end - 1] == Protocol.CR)
+				end--;
+
+			if (this.state == REQUEST_LINE) {
+				if (end == this.lineStart) {
+					// Empty lines before the request line are ignored
+					this.length = 0;
+					this.lineStart = 0;
+					continue;
+				}
+				parseRequestLine(this.lineStart, end);
+				this.state = HEADER_LINE;
+			} else if (end == this.lineStart) {
+				this.state = COMPLETE;
+				return this.request;
+			} else {
+				parseHeaderLine(this.lineStart, end);
+			}
+			this.lineStart = this.length;
+		}
+		return null;
+	}
+
+	/**
+	 * Reads the next request from a blocking stream. Bytes read past the end
+	 * of the request are kept for the next call.
+	 *
+	 * @param inputStream The stream of the connection.
+	 * @return The request, or <tt>null</tt> if the stream ended before a new
+	 *         request started.
+	 * @throws ProtocolException If the request is malformed or too large, or
+	 *             the stream ended in the middle of it.
+	 * @throws IOException If reading fails.
+	 */
+	public HttpRequest read(InputStream inputStream) throws IOException,
+			ProtocolException {
+		if (this.buffer == null) {
+			this.buffer = ByteBuffer.allocate(Protocol.CHUNK_LENGTH);
+			this.buffer.flip();
+		}
+
+		for (;;) {
+			HttpRequest request = parse(this.buffer);
+			if (request != null)
+				return request;
+
+			int bytesRead = inputStream.read(this.buffer.array(), 0,
+					this.buffer.capacity());
+			if (bytesRead == -1) {
+				if (!hasPartialRequest())
+					return null;
+				throw new ProtocolException(Protocol.BAD_REQUEST_CODE,
+						"Connection closed in the middle of a request");
+			}
+			this.buffer.clear();
+			this.buffer.limit(bytesRead);
+		}
+	}
+
+	/**
+	 * Checks whether bytes read from the stream are still waiting to be
+	 * parsed, e.g. a request the client sent without waiting for the
+	 * previous response.
+	 *
+	 * @return <tt>true</tt> if the next {@link #read(InputStream)} may not
+	 *         have to wait for the client
+	 */
+	public boolean hasBufferedInput() {
+		return this.buffer != null && this.buffer.hasRemaining();
+	}
+
+	/**
+	 * Checks whether part of a request has arrived but not all of it.
+	 *
+	 * @return <tt>true</tt> if a request has been started
+	 */
+	public boolean hasPartialRequest() {
+		return this.state != COMPLETE && this.length > 0;
+	}
+
+	private void reset() {
+		this.state = REQUEST_LINE;
+		this.length = 0;
+		this.lineStart = 0;
+		this.request.reset(this.head);
+	}
+
+	private void grow() throws ProtocolException {
+		if (this.head.length >= MAX_HEAD_LENGTH)
+			throw new ProtocolException(Protocol.BAD_REQUEST_CODE,
+					"Request head too large");
+		byte[] larger = new byte[Math.min(this.head.length * 2,
+				MAX_HEAD_LENGTH)];
+		System.arraycopy(this.head, 0, larger, 0, this.length);
+		this.head = larger;
+		this.request.setHead(larger);
+	}
+
+	/**
+	 * Splits e.g. <tt>GET /somedir/page.html HTTP/1.1</tt> into its three
+	 * parts.
+	 */
+	private void parseRequestLine(int start, int end) throws ProtocolException {
+		int[] bounds = this.bounds;
+		int count = 0;
+		int i = start;
+		while (i < end) {
+			while (i < end && this.head[i] == Protocol.SPACE)
+				i++;
+			if (i == end)
+				break;
+			if (count == 3)
+				throw new ProtocolException(Protocol.BAD_REQUEST_CODE,
+						Protocol.BAD_REQUEST_TEXT);
+			bounds[2 * count] = i;
+			while (i < end && this.head[i] != Protocol.SPACE)
+				i++;
+			bounds[2 * count + 1] = i;
+			count++;
+		}
+		if (count != 3)
+			throw new ProtocolException(Protocol.BAD_REQUEST_CODE,
+					Protocol.BAD_REQUEST_TEXT);
+		this.request.setRequestLine(bounds);
+	}
+
+	/**
+	 * Splits e.g. <tt>Host: www.rose-hulman.edu</tt> into name and value.
+	 */
+	private void parseHeaderLine(int start, int end) throws ProtocolException {
+		int colon = start;
+		while (colon < end && this.head[colon] != Protocol.SEPERATOR)
+			colon++;
+		// A name is required and may not be followed by white space
+		if (colon == start || colon == end
+				|| isWhiteSpace(this.head[colon - 1])
+				|| isWhiteSpace(this.head[start]))
+			throw new ProtocolException(Protocol.BAD_REQUEST_CODE,
+					Protocol.BAD_REQUEST_TEXT);
+		if (this.request.getFieldCount() == MAX_HEADER_COUNT)
+			throw new ProtocolException(Protocol.BAD_REQUEST_CODE,
+					"Too many header fields");
+
+		int valueStart = colon + 1;
+		int valueEnd = end;
+		while (valueStart < valueEnd && isWhiteSpace(this.head[valueStart]))
+			valueStart++;
+		while (valueEnd > valueStart && isWhiteSpace(this.head[valueEnd - 1]))
+			valueEnd--;
+		this.request.addField(start, colon, valueStart, valueEnd);
+	}
+
+	private static boolean isWhiteSpace(byte b) {
+		return b == Protocol.SPACE || b == '\t';
+	}
+}
@@ -21,18 +21,24 @@
  
 package protocol;
 
-import java.io.BufferedInputStream;
 import java.io.BufferedOutputStream;
 import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileReader;
+import java.io.IOException;
 import java.io.InputStream;
-import java.io.InputStreamReader;
 import java.io.OutputStream;
-import java.io.PrintStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.GatheringByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.List;
 import java.util.Map;
 
+import server.OutboundQueue;
 import server.ServerCache;
 
 /**
@@ -41,11 +47,23 @@ import server.ServerCache;
  * @author Chandan R. Rupakheti (rupakhet@rose-hulman.edu)
  */
 public class HttpResponse {
+	/**
+	 * The {@link Protocol#Server} field is the same for every response.
+	 */
+	private static final byte[] SERVER_LINE = (Protocol.Server
+			+ Protocol.SEPERATOR + Protocol.SPACE + Protocol.getServerInfo() + Protocol.CRLF)
+			.getBytes(StandardCharsets.ISO_8859_1);
+
 	private String version;
 	private int status;
 	private String phrase;
 	private Map<String, String> header;
 	private File file;
+	private byte[] headBlock;
+	private ByteBuffer body;
+	private List<ByteRange> ranges;
+	private byte[][] partHeads;
+	private Boolean cacheHit;
 
 	
 	/**
@@ -64,6 +82,39 @@ public class HttpResponse {
 		this.header = header;
 		this.file = file;
 	}
+	
+	/**
+	 * Constructs a HttpResponse object whose body is already in memory and
+	 * whose status line and fixed header fields are already encoded.
+	 * 
+	 * @param version The http version.
+	 * @param status The response status.
+	 * @param phrase The response status phrase.
+	 * @param header The header fields that differ per request.
+	 * @param headBlock The encoded status line and fixed header fields, or
+	 * <tt>null</tt> to encode the status line from the other parameters.
+	 * @param body The body to be sent.
+	 */
+	public HttpResponse(String version, int status, String phrase, Map<String, String> header, byte[] headBlock, ByteBuffer body) {
+		this(version, status, phrase, header, (File) null);
+		this.headBlock = headBlock;
+		this.body = body;
+	}
+
+	/**
+	 * Makes this a response with only some ranges of the file. The ranges are
+	 * taken out of the body if there is one, otherwise out of the file.
+	 * 
+	 * @param body The contents of the whole file, or <tt>null</tt> to read the ranges from the file.
+	 * @param ranges The ranges to send.
+	 * @param partHeads For more than one range, the bytes to send before each range and, as the last 
+	 * element, after the last one; <tt>null</tt> for a single range.
+	 */
+	void setRanges(ByteBuffer body, List<ByteRange> ranges, byte[][] partHeads) {
+		this.body = body;
+		this.ranges = ranges;
+		this.partHeads = partHeads;
+	}
 
 	/**
 	 * Gets the version of the HTTP.
@@ -100,6 +151,57 @@ public class HttpResponse {
 		return file;
 	}
 
+	/**
+	 * The body to be sent if it is already in memory.
+	 * 
+	 * @return the body, or <tt>null</tt> if there is none or it is read from the file
+	 */
+	public ByteBuffer getBody() {
+		return body;
+	}
+
+	/**
+	 * The ranges of the file to be sent, for a 206 Partial Content response.
+	 * 
+	 * @return the ranges, or <tt>null</tt> if the whole body is sent
+	 */
+	public List<ByteRange> getRanges() {
+		return ranges;
+	}
+
+	/**
+	 * Gets the part header that goes before a range of a multipart body.
+	 * 
+	 * @param index The index of the range, or the number of ranges for the
+	 * delimiter that ends the body.
+	 * @return the bytes to send, or <tt>null</tt> if the body is not multipart
+	 */
+	public ByteBuffer getPartHead(int index) {
+		if(partHeads == null) {
+			return null;
+		}
+		return ByteBuffer.wrap(partHeads[index]);
+	}
+
+	/**
+	 * Tells whether the body was taken from the server cache.
+	 * 
+	 * @return {@link Boolean#TRUE} if the file was cached already, {@link Boolean#FALSE} if it had to 
+	 * be read into the cache for this response, or <tt>null</tt> if the cache was not involved
+	 */
+	public Boolean getCacheHit() {
+		return cacheHit;
+	}
+
+	/**
+	 * Records whether the body was taken from the server cache.
+	 * 
+	 * @param cacheHit <tt>true</tt> if the file was cached already
+	 */
+	public void setCacheHit(boolean cacheHit) {
+		this.cacheHit = cacheHit;
+	}
+
 	/**
 	 * Returns the header fields associated with the response object.
 	 * @return the header
@@ -119,39 +221,147 @@ public class HttpResponse {
 	}
 	
 	/**
-	 * Writes the data of the http response object to the output stream.
+	 * Renders the status line, the header fields and the blank line that ends
+	 * them into a single buffer.
 	 * 
-	 * @param outStream The output stream
-	 * @throws Exception
+	 * @return A buffer ready to be written to a channel.
 	 */
-	public void write(OutputStream outStream, ServerCache c) throws Exception {
-		BufferedOutputStream out = new BufferedOutputStream(outStream, Protocol.CHUNK_LENGTH);
+	public ByteBuffer getHeadBuffer() {
+		byte[] rest = encode(this.headBlock == null, true);
+		if(this.headBlock == null) {
+			return ByteBuffer.wrap(rest);
+		}
+		ByteBuffer buffer = ByteBuffer.allocate(this.headBlock.length + rest.length);
+		buffer.put(this.headBlock).put(rest);
+		buffer.flip();
+		return buffer;
+	}
+	
+	/**
+	 * Renders the head like {@link #getHeadBuffer()}, but leaves a shared head
+	 * block in its own buffer instead of copying it.
+	 * 
+	 * @return One or two buffers to be written in order.
+	 */
+	public ByteBuffer[] getHeadBuffers() {
+		if(this.headBlock == null) {
+			return new ByteBuffer[] { this.getHeadBuffer() };
+		}
+		return new ByteBuffer[] { ByteBuffer.wrap(this.headBlock).asReadOnlyBuffer(), 
+				ByteBuffer.wrap(encode(false, true)) };
+	}
+	
+	/**
+	 * Encodes the head of the response.
+	 * 
+	 * @param statusLine Whether to start with the status line.
+	 * @param blankLine Whether to end with the blank line that ends the head.
+	 * @return The encoded bytes.
+	 */
+	byte[] encode(boolean statusLine, boolean blankLine) {
+		Head head = new Head();
 
 		// First status line
-		String line = this.version + Protocol.SPACE + this.status + Protocol.SPACE + this.phrase + Protocol.CRLF;
-		out.write(line.getBytes());
-		
+		if(statusLine) {
+			head.append(this.version).append(Protocol.SPACE).append(Integer.toString(this.status))
+					.append(Protocol.SPACE).append(this.phrase).append(Protocol.CRLF);
+		}
+
 		// Write header fields if there is something to write in header field
 		if(header != null && !header.isEmpty()) {
 			for(Map.Entry<String, String> entry : header.entrySet()) {
-				String key = entry.getKey();
-				String value = entry.getValue();
-				
+				// The date and the server are encoded already
+				byte[] line = null;
+				if(entry.getKey().equals(Protocol.DATE)) {
+					line = HttpDate.lineOf(entry.getValue());
+				}
+				else if(entry.getKey().equals(Protocol.Server) 
+						&& entry.getValue().equals(Protocol.getServerInfo())) {
+					line = SERVER_LINE;
+				}
+				if(line != null) {
+					head.append(line);
+					continue;
+				}
 				// Write each header field line
-				line = key + Protocol.SEPERATOR + Protocol.SPACE + value + Protocol.CRLF;
-				out.write(line.getBytes());
+				head.append(entry.getKey()).append(Protocol.SEPERATOR).append(Protocol.SPACE)
+						.append(entry.getValue()).append(Protocol.CRLF);
 			}
 		}
 
 		// Write a blank line
-		out.write(Protocol.CRLF.getBytes());
+		if(blankLine) {
+			head.append(Protocol.CRLF);
+		}
+		return head.toByteArray();
+	}
+	
+	/**
+	 * The bytes of a head as it is encoded, in ISO-8859-1 like all of HTTP's
+	 * own text.
+	 */
+	private static class Head {
+		private byte[] bytes = new byte[256];
+		private int length;
+		
+		public Head append(String text) {
+			ensure(text.length());
+			for(int i = 0; i < text.length(); i++) {
+				char c = text.charAt(i);
+				this.bytes[this.length++] = c <= 0xFF ? (byte) c : (byte) '?';
+			}
+			return this;
+		}
+		
+		public Head append(char c) {
+			ensure(1);
+			this.bytes[this.length++] = c <= 0xFF ? (byte) c : (byte) '?';
+			return this;
+		}
+		
+		public Head append(byte[] line) {
+			ensure(line.length);
+			System.arraycopy(line, 0, this.bytes, this.length, line.length);
+			this.length += line.length;
+			return this;
+		}
+		
+		private void ensure(int more) {
+			if(this.length + more > this.bytes.length) {
+				this.bytes = Arrays.copyOf(this.bytes, Math.max(this.bytes.length * 2, this.length + more));
+			}
+		}
+		
+		public byte[] toByteArray() {
+			return Arrays.copyOf(this.bytes, this.length);
+		}
+	}
+	
+	/**
+	 * Writes the data of the http response object to the output stream.
+	 * 
+	 * @param outStream The output stream
+	 * @throws Exception
+	 */
+	public void write(OutputStream outStream, ServerCache c) throws Exception {
+		BufferedOutputStream out = new BufferedOutputStream(outStream, Protocol.CHUNK_LENGTH);
 
+		// Status line, header fields and blank line
+		ByteBuffer head = this.getHeadBuffer();
+		out.write(head.array(), 0, head.limit());
+
+		// We are sending ranges of the file
+		if(ranges != null) {
+			writeRanges(Channels.newChannel(out));
+		}
+		// We already have the body in memory
+		else if(body != null) {
+			Channels.newChannel(out).write(body.duplicate());
+		}
 		// We are reading a file
-		if(this.getStatus() == Protocol.OK_CODE && file != null) {
+		else if(this.getStatus() == Protocol.OK_CODE && file != null) {
 			// Process text documents
-			//FileInputStream fileInStream = new FileInputStream(file);
-			InputStream fileInStream = c.get(file);
-			BufferedInputStream inStream = new BufferedInputStream(fileInStream, Protocol.CHUNK_LENGTH);
+			InputStream inStream = c.get(file);
 			
 			byte[] buffer = new byte[Protocol.CHUNK_LENGTH];
 			int bytesRead = 0;
@@ -167,6 +377,60 @@ public class HttpResponse {
 		out.flush();
 	}
 	
+	private void writeRanges(WritableByteChannel out) throws IOException {
+		FileChannel fileChannel = null;
+		if(body == null) {
+			fileChannel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+		}
+		try {
+			for(int i = 0; i < ranges.size(); i++) {
+				ByteRange range = ranges.get(i);
+				if(partHeads != null) {
+					out.write(this.getPartHead(i));
+				}
+				if(body != null) {
+					out.write(range.slice(body));
+					continue;
+				}
+				long position = range.getStart();
+				while(position <= range.getEnd()) {
+					long sent = fileChannel.transferTo(position, range.getEnd() + 1 - position, out);
+					if(sent <= 0) {
+						throw new IOException("File shrank while sending it");
+					}
+					position += sent;
+				}
+			}
+			if(partHeads != null) {
+				out.write(this.getPartHead(ranges.size()));
+			}
+		} finally {
+			if(fileChannel != null) {
+				fileChannel.close();
+			}
+		}
+	}
+	
+	/**
+	 * Writes the http response object to a blocking channel without copying
+	 * the body. Cached files are written from memory together with the head
+	 * in a single gathering write, other files are transferred by the
+	 * operating system straight from the file to the channel.
+	 * 
+	 * @param channel The blocking channel of the connection.
+	 * @param c The cache to take file contents from.
+	 * @throws IOException
+	 */
+	public void write(GatheringByteChannel channel, ServerCache c) throws IOException {
+		OutboundQueue queue = new OutboundQueue();
+		try {
+			queue.add(this, c);
+			queue.flush(channel);
+		} finally {
+			queue.clear();
+		}
+	}
+	
 	@Override
 	public String toString() {
 		StringBuffer buffer = new StringBuffer();
@@ -24,9 +24,12 @@ package protocol;
 import java.io.File;
 import java.net.FileNameMap;
 import java.net.URLConnection;
-import java.util.Calendar;
-import java.util.Date;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
 import java.util.HashMap;
+import java.util.List;
+
+import server.GMTConversion;
 
 /**
  * This is a factory to produce various kind of HTTP responses.
@@ -34,6 +37,12 @@ import java.util.HashMap;
  * @author Chandan R. Rupakheti (rupakhet@rose-hulman.edu)
  */
 public class HttpResponseFactory {
+	/**
+	 * Separates the parts of a multipart body. It only has to be a string that does not turn up in the 
+	 * files, so one picked when the server starts will do.
+	 */
+	private static final String BOUNDARY = "SWS" + Long.toHexString(System.nanoTime());
+	
 	/**
 	 * Convenience method for adding general header to the supplied response object.
 	 * 
@@ -41,18 +50,75 @@ public class HttpResponseFactory {
 	 * @param connection Supported values are {@link Protocol#OPEN} and {@link Protocol#CLOSE}.
 	 */
 	private static void fillGeneralHeader(HttpResponse response, String connection) {
+		// Lets add the fields that change with every request
+		fillRequestHeader(response, connection);
+		
+		// Lets add server info
+		response.put(Protocol.Server, Protocol.getServerInfo());
+
+		// Lets add extra header with provider info
+		response.put(Protocol.PROVIDER, Protocol.AUTHOR);
+	}
+	
+	/**
+	 * Convenience method for adding the header fields that differ between any two responses.
+	 * 
+	 * @param response The {@link HttpResponse} object whose header needs to be filled in.
+	 * @param connection Supported values are {@link Protocol#OPEN} and {@link Protocol#CLOSE}.
+	 */
+	private static void fillRequestHeader(HttpResponse response, String connection) {
 		// Lets add Connection header
 		response.put(Protocol.CONNECTION, connection);
 
 		// Lets add current date
-		Date date = Calendar.getInstance().getTime();
-		response.put(Protocol.DATE, date.toString());
+		response.put(Protocol.DATE, HttpDate.now());
+	}
+	
+	/**
+	 * Encodes the status line and the header fields of a 200 OK response for a file that are the same 
+	 * for every request, so they can be stored with the cached file and reused.
+	 * 
+	 * @param fileName The name of the file, to find its MIME type.
+	 * @param length The length of the body in bytes.
+	 * @param lastModified The time the file was last modified.
+	 * @param encoding The content coding of the body, or <tt>null</tt> if it is the file as it is.
+	 * @param etag The entity tag of the body, from {@link #createETag(long, long, String)}.
+	 * @return The encoded status line and header fields, without the blank line that ends the head.
+	 */
+	public static byte[] createHeadBlock(String fileName, long length, long lastModified, String encoding, 
+			String etag) {
+		HttpResponse response = new HttpResponse(Protocol.VERSION, Protocol.OK_CODE, 
+				Protocol.OK_TEXT, new HashMap<String, String>(), (File) null);
 		
 		// Lets add server info
 		response.put(Protocol.Server, Protocol.getServerInfo());
 
 		// Lets add extra header with provider info
 		response.put(Protocol.PROVIDER, Protocol.AUTHOR);
+		
+		// Lets add the description of the file
+		fillFileHeader(response, fileName, length, lastModified, encoding, etag);
+		
+		return response.encode(true, false);
+	}
+	
+	/**
+	 * Creates a {@link HttpResponse} object for sending a cached file whose fixed header fields are 
+	 * already encoded in a head block.
+	 * 
+	 * @param headBlock The head block from {@link #createHeadBlock(String, long, long, String, String)}.
+	 * @param body The contents of the file.
+	 * @param connection Supported values are {@link Protocol#OPEN} and {@link Protocol#CLOSE}.
+	 * @return A {@link HttpResponse} object represent 200 status.
+	 */
+	public static HttpResponse create200OK(byte[] headBlock, ByteBuffer body, String connection) {
+		HttpResponse response = new HttpResponse(Protocol.VERSION, Protocol.OK_CODE, 
+				Protocol.OK_TEXT, new HashMap<String, String>(4), headBlock, body);
+		
+		// Only the fields that change with every request are left to fill in
+		fillRequestHeader(response, connection);
+		
+		return response;
 	}
 	
 	/**
@@ -64,31 +130,229 @@ public class HttpResponseFactory {
 	 * @return A {@link HttpResponse} object represent 200 status.
 	 */
 	public static HttpResponse create200OK(File file, String connection) {
+		return create200OK(file, file.length(), file.lastModified(), connection);
+	}
+	
+	/**
+	 * Creates a {@link HttpResponse} object for sending the supplied file, whose length and modification 
+	 * time are already known.
+	 * 
+	 * @param file The {@link File} to be sent.
+	 * @param length The length of the file in bytes.
+	 * @param lastModified The time the file was last modified.
+	 * @param connection Supported values are {@link Protocol#OPEN} and {@link Protocol#CLOSE}.
+	 * @return A {@link HttpResponse} object represent 200 status.
+	 */
+	public static HttpResponse create200OK(File file, long length, long lastModified, String connection) {
 		HttpResponse response = new HttpResponse(Protocol.VERSION, Protocol.OK_CODE, 
 				Protocol.OK_TEXT, new HashMap<String, String>(), file);
 		
 		// Lets fill up header fields with more information
 		fillGeneralHeader(response, connection);
 		
-		// Lets add last modified date for the file
-		long timeSinceEpoch = file.lastModified();
-		Date modifiedTime = new Date(timeSinceEpoch);
-		response.put(Protocol.LAST_MODIFIED, modifiedTime.toString());
+		// Lets add the description of the file
+		fillFileHeader(response, file.getName(), length, lastModified, null, 
+				createETag(lastModified, length, null));
+		return response;
+	}
+	
+	/**
+	 * Creates a {@link HttpResponse} object for sending a body the server generated, e.g. a status 
+	 * page. Clients are told not to store it, it is out of date right away.
+	 * 
+	 * @param contentType The value of the {@link Protocol#CONTENT_TYPE} header field.
+	 * @param body The body to be sent.
+	 * @param connection Supported values are {@link Protocol#OPEN} and {@link Protocol#CLOSE}.
+	 * @return A {@link HttpResponse} object represent 200 status.
+	 */
+	public static HttpResponse create200OK(String contentType, byte[] body, String connection) {
+		HttpResponse response = new HttpResponse(Protocol.VERSION, Protocol.OK_CODE, 
+				Protocol.OK_TEXT, new HashMap<String, String>(), null, ByteBuffer.wrap(body));
+		
+		// Lets fill up header fields with more information
+		fillGeneralHeader(response, connection);
+		
+		// Lets describe the body
+		response.put(Protocol.CONTENT_TYPE, contentType);
+		response.put(Protocol.CONTENT_LENGTH, body.length + "");
+		response.put(Protocol.CACHE_CONTROL, "no-store");
+		return response;
+	}
+	
+	/**
+	 * Creates a {@link HttpResponse} object for sending some ranges of the supplied file. A single range 
+	 * is sent as it is, several ranges are sent as a <tt>multipart/byteranges</tt> body.
+	 * 
+	 * @param file The {@link File} the ranges are taken from.
+	 * @param body The contents of the whole file if they are in memory, or <tt>null</tt> to read the 
+	 * ranges from the file.
+	 * @param length The length of the whole file.
+	 * @param lastModified The time the file was last modified.
+	 * @param ranges The ranges to send, as returned by {@link ByteRange#parse(String, long)}.
+	 * @param connection Supported values are {@link Protocol#OPEN} and {@link Protocol#CLOSE}.
+	 * @return A {@link HttpResponse} object represent 206 status.
+	 */
+	public static HttpResponse create206PartialContent(File file, ByteBuffer body, long length, 
+			long lastModified, List<ByteRange> ranges, String connection) {
+		HttpResponse response = new HttpResponse(Protocol.VERSION, Protocol.PARTIAL_CONTENT_CODE, 
+				Protocol.PARTIAL_CONTENT_TEXT, new HashMap<String, String>(), file);
+		
+		// Lets fill up header fields with more information
+		fillGeneralHeader(response, connection);
+		
+		// Lets add the description of the file
+		fillFileHeader(response, file.getName(), length, lastModified, null, 
+				createETag(lastModified, length, null));
+		
+		if(ranges.size() == 1) {
+			ByteRange range = ranges.get(0);
+			response.put(Protocol.CONTENT_RANGE, range.toContentRange(length));
+			response.put(Protocol.CONTENT_LENGTH, range.getLength() + "");
+			response.setRanges(body, ranges, null);
+			return response;
+		}
+		
+		// Every range becomes a part with its own type and range, the parts are separated by the boundary
+		String type = response.getHeader().get(Protocol.CONTENT_TYPE);
+		byte[][] partHeads = new byte[ranges.size() + 1][];
+		long contentLength = 0;
+		for(int i = 0; i < ranges.size(); i++) {
+			ByteRange range = ranges.get(i);
+			StringBuilder partHead = new StringBuilder(128);
+			if(i > 0) {
+				partHead.append(Protocol.CRLF);
+			}
+			partHead.append("--").append(BOUNDARY).append(Protocol.CRLF);
+			if(type != null) {
+				partHead.append(Protocol.CONTENT_TYPE).append(Protocol.SEPERATOR).append(Protocol.SPACE)
+						.append(type).append(Protocol.CRLF);
+			}
+			partHead.append(Protocol.CONTENT_RANGE).append(Protocol.SEPERATOR).append(Protocol.SPACE)
+					.append(range.toContentRange(length)).append(Protocol.CRLF).append(Protocol.CRLF);
+			partHeads[i] = partHead.toString().getBytes(StandardCharsets.US_ASCII);
+			contentLength += partHeads[i].length + range.getLength();
+		}
+		partHeads[ranges.size()] = (Protocol.CRLF + "--" + BOUNDARY + "--" + Protocol.CRLF)
+				.getBytes(StandardCharsets.US_ASCII);
+		contentLength += partHeads[ranges.size()].length;
+		
+		response.put(Protocol.CONTENT_TYPE, Protocol.MULTIPART_BYTERANGES + "; boundary=" + BOUNDARY);
+		response.put(Protocol.CONTENT_LENGTH, contentLength + "");
+		response.setRanges(body, ranges, partHeads);
+		return response;
+	}
+	
+	/**
+	 * Creates a {@link HttpResponse} object for telling the client that none of the ranges it asked for 
+	 * lie within the file.
+	 * 
+	 * @param length The length of the file.
+	 * @param connection Supported values are {@link Protocol#OPEN} and {@link Protocol#CLOSE}.
+	 * @return A {@link HttpResponse} object represent 416 status.
+	 */
+	public static HttpResponse create416RangeNotSatisfiable(long length, String connection) {
+		HttpResponse response = new HttpResponse(Protocol.VERSION, Protocol.RANGE_NOT_SATISFIABLE_CODE, 
+				Protocol.RANGE_NOT_SATISFIABLE_TEXT, new HashMap<String, String>(), null);
+		
+		// Lets fill up the header fields with more information
+		fillGeneralHeader(response, connection);
+		
+		// Lets tell the client how long the file actually is
+		response.put(Protocol.CONTENT_RANGE, Protocol.BYTES + " */" + length);
+		
+		// There is no body, the next response follows right after the header
+		response.put(Protocol.CONTENT_LENGTH, "0");
+		
+		return response;
+	}
+	
+	/**
+	 * Convenience method for adding the header fields that describe the file being sent.
+	 * 
+	 * @param response The {@link HttpResponse} object whose header needs to be filled in.
+	 * @param fileName The name of the file, to find its MIME type.
+	 * @param length The length of the body in bytes.
+	 * @param lastModified The time the file was last modified.
+	 * @param encoding The content coding of the body, or <tt>null</tt> if it is the file as it is.
+	 * @param etag The entity tag of the body.
+	 */
+	private static void fillFileHeader(HttpResponse response, String fileName, long length, long lastModified, 
+			String encoding, String etag) {
+		// Lets add last modified date and entity tag for the file
+		response.put(Protocol.LAST_MODIFIED, formatLastModified(lastModified));
+		response.put(Protocol.ETAG, etag);
 		
 		// Lets get content length in bytes
-		long length = file.length();
 		response.put(Protocol.CONTENT_LENGTH, length + "");
 		
 		// Lets get MIME type for the file
 		FileNameMap fileNameMap = URLConnection.getFileNameMap();
-		String mime = fileNameMap.getContentTypeFor(file.getName());
+		String mime = fileNameMap.getContentTypeFor(fileName);
 		// The fileNameMap cannot find mime type for all of the documents, e.g. doc, odt, etc.
 		// So we will not add this field if we cannot figure out what a mime type is for the file.
 		// Let browser do this job by itself.
 		if(mime != null) { 
 			response.put(Protocol.CONTENT_TYPE, mime);
 		}
-		return response;
+		
+		// Lets tell caches that the body depends on what the client accepts
+		if(isCompressibleType(mime)) {
+			response.put(Protocol.VARY, Protocol.ACCEPT_ENCODING);
+		}
+		if(encoding != null) {
+			response.put(Protocol.CONTENT_ENCODING, encoding);
+		} else {
+			// Lets tell the client it may ask for parts of the file
+			response.put(Protocol.ACCEPT_RANGES, Protocol.BYTES);
+		}
+	}
+	
+	/**
+	 * Formats the time a file was last modified the way it is sent in the {@link Protocol#LAST_MODIFIED} 
+	 * header field, so that validators sent back by clients can be compared with it.
+	 * 
+	 * @param lastModified The time in milliseconds since the epoch.
+	 * @return The formatted time.
+	 */
+	public static String formatLastModified(long lastModified) {
+		return GMTConversion.toGMTString(lastModified);
+	}
+	
+	/**
+	 * Creates the entity tag of a version of a file. It is made of the time the file was last modified 
+	 * and its length, so every server computes the same tag for the same file without reading it, and 
+	 * of the content coding, so every coding of the file has a tag of its own.
+	 * 
+	 * @param lastModified The time the file was last modified.
+	 * @param length The length of the file as it is, not compressed.
+	 * @param encoding The content coding of the body, or <tt>null</tt> if it is the file as it is.
+	 * @return The tag, quoted as in the {@link Protocol#ETAG} header field.
+	 */
+	public static String createETag(long lastModified, long length, String encoding) {
+		StringBuilder etag = new StringBuilder(32);
+		etag.append('"').append(Long.toHexString(lastModified)).append('-').append(Long.toHexString(length));
+		if(encoding != null) {
+			etag.append('-').append(encoding);
+		}
+		return etag.append('"').toString();
+	}
+	
+	/**
+	 * Checks whether files of this name are worth compressing, i.e. whether they are text.
+	 * 
+	 * @param fileName The name of the file.
+	 * @return <tt>true</tt> if the file may be sent compressed
+	 */
+	public static boolean isCompressible(String fileName) {
+		return isCompressibleType(URLConnection.getFileNameMap().getContentTypeFor(fileName));
+	}
+	
+	private static boolean isCompressibleType(String mime) {
+		if(mime == null) {
+			return false;
+		}
+		return mime.startsWith(Protocol.MIME_TEXT + Protocol.SLASH) || mime.endsWith("xml") 
+				|| mime.endsWith("json") || mime.endsWith("javascript");
 	}
 	
 	/**
@@ -104,6 +368,9 @@ public class HttpResponseFactory {
 		// Lets fill up header fields with more information
 		fillGeneralHeader(response, connection);
 		
+		// There is no body, the next response follows right after the header
+		response.put(Protocol.CONTENT_LENGTH, "0");
+		
 		return response;
 	}
 	
@@ -120,6 +387,28 @@ public class HttpResponseFactory {
 		// Lets fill up the header fields with more information
 		fillGeneralHeader(response, connection);
 		
+		// There is no body, the next response follows right after the header
+		response.put(Protocol.CONTENT_LENGTH, "0");
+		
+		return response;	
+	}
+	
+	/**
+	 * Creates a {@link HttpResponse} object for sending HTTP version not supported response.
+	 * 
+	 * @param connection Supported values are {@link Protocol#OPEN} and {@link Protocol#CLOSE}.
+	 * @return A {@link HttpResponse} object represent 505 status.
+	 */
+	public static HttpResponse create505NotSupported(String connection) {
+		HttpResponse response = new HttpResponse(Protocol.VERSION, Protocol.NOT_SUPPORTED_CODE, 
+				Protocol.NOT_SUPPORTED_TEXT, new HashMap<String, String>(), null);
+		
+		// Lets fill up the header fields with more information
+		fillGeneralHeader(response, connection);
+		
+		// There is no body, the next response follows right after the header
+		response.put(Protocol.CONTENT_LENGTH, "0");
+		
 		return response;	
 	}
 	
@@ -136,6 +425,9 @@ public class HttpResponseFactory {
 		// Lets fill up the header fields with more information
 		fillGeneralHeader(response, connection);
 		
+		// There is no body, the next response follows right after the header
+		response.put(Protocol.CONTENT_LENGTH, "0");
+		
 		return response;	
 	}
 	
@@ -154,6 +446,25 @@ public class HttpResponseFactory {
 		return response;	
 	}
 	
+	/**
+	 * Creates a {@link HttpResponse} object for telling the client that its copy of a file is still 
+	 * current. It carries the fields a 200 OK would have that describe the version of the file, 
+	 * so the client can update what it stored.
+	 * 
+	 * @param fileName The name of the file.
+	 * @param etag The entity tag of the version of the file the client would get.
+	 * @param connection Supported values are {@link Protocol#OPEN} and {@link Protocol#CLOSE}.
+	 * @return A {@link HttpResponse} object represent 304 status.
+	 */
+	public static HttpResponse create304NotModified(String fileName, String etag, String connection) {
+		HttpResponse response = create304NotModified(connection);
+		response.put(Protocol.ETAG, etag);
+		if(isCompressible(fileName)) {
+			response.put(Protocol.VARY, Protocol.ACCEPT_ENCODING);
+		}
+		return response;
+	}
+	
 	/**
 	 * Creates a {@link HttpResponse} object for sending request timeout response.
 	 * 
@@ -167,6 +478,9 @@ public class HttpResponseFactory {
 		// Lets fill up the header fields with more information
 		fillGeneralHeader(response, connection);
 		
+		// There is no body, the next response follows right after the header
+		response.put(Protocol.CONTENT_LENGTH, "0");
+		
 		return response;	
 	}
 	
@@ -183,6 +497,53 @@ public class HttpResponseFactory {
 		// Lets fill up the header fields with more information
 		fillGeneralHeader(response, connection);
 		
+		// There is no body, the next response follows right after the header
+		response.put(Protocol.CONTENT_LENGTH, "0");
+		
+		return response;	
+	}
+	
+	/**
+	 * Creates a {@link HttpResponse} object for telling the client that a file has been
+	 * removed for good.
+	 * 
+	 * @param connection Supported values are {@link Protocol#OPEN} and {@link Protocol#CLOSE}.
+	 * @return A {@link HttpResponse} object represent 410 status.
+	 */
+	public static HttpResponse create410Gone(String connection) {
+		HttpResponse response = new HttpResponse(Protocol.VERSION, Protocol.GONE_CODE, 
+				Protocol.GONE_TEXT, new HashMap<String, String>(), null);
+		
+		// Lets fill up the header fields with more information
+		fillGeneralHeader(response, connection);
+		
+		// There is no body, the next response follows right after the header
+		response.put(Protocol.CONTENT_LENGTH, "0");
+		
+		return response;	
+	}
+	
+	/**
+	 * Creates a {@link HttpResponse} object for telling the client that the server
+	 * is too busy to handle its request right now.
+	 * 
+	 * @param connection Supported values are {@link Protocol#OPEN} and {@link Protocol#CLOSE}.
+	 * @param retryAfter The number of seconds the client should wait before retrying.
+	 * @return A {@link HttpResponse} object represent 503 status.
+	 */
+	public static HttpResponse create503ServiceUnavailable(String connection, int retryAfter) {
+		HttpResponse response = new HttpResponse(Protocol.VERSION, Protocol.SERVICE_UNAVAILABLE_CODE, 
+				Protocol.SERVICE_UNAVAILABLE_TEXT, new HashMap<String, String>(), null);
+		
+		// Lets fill up the header fields with more information
+		fillGeneralHeader(response, connection);
+		
+		// There is no body, the next response follows right after the header
+		response.put(Protocol.CONTENT_LENGTH, "0");
+		
+		// Lets tell the client when to come back
+		response.put(Protocol.RETRY_AFTER, retryAfter + "");
+		
 		return response;	
 	}
 	
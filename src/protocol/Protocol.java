@@ -38,12 +38,16 @@ public class Protocol {
 
     // Some useful protocol elements
     public static final String VERSION = "HTTP/1.1";
+    public static final String VERSION_1_0 = "HTTP/1.0";
     public static final String GET = "GET";
     
     // Some useful http codes and text
     public static final int OK_CODE = 200;
     public static final String OK_TEXT = "OK";
     
+    public static final int PARTIAL_CONTENT_CODE = 206;
+    public static final String PARTIAL_CONTENT_TEXT = "Partial Content";
+    
     public static final int NOT_MODIFIED_CODE = 304;
     public static final String NOT_MODIFIED_TEXT = "Not Modified";
     
@@ -61,10 +65,19 @@ public class Protocol {
     
     public static final int REQUEST_TIMEOUT_CODE = 408;
     public static final String REQUEST_TIMEOUT_TEXT = "Request Timeout";
+
+    public static final int GONE_CODE = 410;
+    public static final String GONE_TEXT = "Gone";
+    
+    public static final int RANGE_NOT_SATISFIABLE_CODE = 416;
+    public static final String RANGE_NOT_SATISFIABLE_TEXT = "Range Not Satisfiable";
     
     public static final int NOT_IMPLEMENTED_CODE = 501;
     public static final String NOT_IMPLEMENTED_TEXT = "HTTP Version Not Supported";
     
+    public static final int SERVICE_UNAVAILABLE_CODE = 503;
+    public static final String SERVICE_UNAVAILABLE_TEXT = "Service Unavailable";
+    
     public static final int NOT_SUPPORTED_CODE = 505;
     public static final String NOT_SUPPORTED_TEXT = "HTTP Version Not Supported";
 
@@ -72,13 +85,33 @@ public class Protocol {
     public static final String HOST = "Host";
     public static final String CONNECTION = "Connection";
     public static final String USER_AGENT = "User-Agent";
+    public static final String ACCEPT_ENCODING = "Accept-Encoding";
+    public static final String RANGE = "Range";
+    public static final String IF_RANGE = "If-Range";
+    public static final String IF_NONE_MATCH = "If-None-Match";
+    public static final String IF_MODIFIED_SINCE = "If-Modified-Since";
 
     // Some useful header elements in response
     public static final String DATE = "Date";
     public static final String Server = "Server";
     public static final String LAST_MODIFIED = "Last-Modified";
+    public static final String ETAG = "ETag";
     public static final String CONTENT_LENGTH = "Content-Length";
     public static final String CONTENT_TYPE = "Content-Type";
+    public static final String RETRY_AFTER = "Retry-After";
+    public static final String CONTENT_ENCODING = "Content-Encoding";
+    public static final String VARY = "Vary";
+    public static final String ACCEPT_RANGES = "Accept-Ranges";
+    public static final String CONTENT_RANGE = "Content-Range";
+    public static final String CACHE_CONTROL = "Cache-Control";
+    
+    // Content codings we can compress responses with
+    public static final String GZIP = "gzip";
+    public static final String DEFLATE = "deflate";
+    
+    // The only range unit we know, and how several ranges are sent
+    public static final String BYTES = "bytes";
+    public static final String MULTIPART_BYTERANGES = "multipart/byteranges";
     
     /**
      * A chunk size to be used when reading a file and sending it to a socket. 
@@ -90,6 +123,11 @@ public class Protocol {
     
     public static final int TIMEOUT = 5000;
     
+    /**
+     * Seconds an overloaded server asks clients to wait before they retry.
+     */
+    public static final int RETRY_AFTER_SECONDS = 1;
+    
     // Server information that we want to send in "Server:" header field
     public static final String SERVER_INFO = "SimpleWebServer(SWS)/1.0.0";
     public static final String PROVIDER = "Provider";
@@ -99,12 +137,22 @@ public class Protocol {
     public static final String DEFAULT_FILE = "index.html";
     public static final String MIME_TEXT = "text";
     
+    /**
+     * The value of the "Server:" header field. It only depends on the system we run on,
+     * so it is put together once.
+     */
+    private static final String serverInfo = createServerInfo();
+    
     /**
      * Returns a formatted String containing server information.<br/>
      * e.g. <tt>SimpleWebServer(SWS)/1.0.0 (Mac OS X/10.5.8/i386)</tt>
      * @return
      */
 	public static String getServerInfo() {
+		return serverInfo;
+	}
+	
+	private static String createServerInfo() {
 		String os = System.getProperty("os.name"); // e.g. Mac OSX, Ubuntu, etc.
 		String osVersion = System.getProperty("os.version"); // e.g. 10.5, 10.0.4, etc
 		String architecture = System.getProperty("os.arch"); // e.g. i386, x86_64, etc
@@ -0,0 +1,374 @@
+/*
+ * AccessLog.java
+ * Oct 17, 2026
+ *
+ * Simple Web Server (SWS) for CSSE 477
+ *
+ * Copyright (C) 2012 Chandan Raj Rupakheti
+ *
+ * This program is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation, either
+ * version 3 of the License, or any later version.
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/lgpl.html>.
+ *
+ */
+
+
+package server;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+import protocol.ByteRange;
+import protocol.HttpRequest;
+import protocol.HttpResponse;
+import protocol.Protocol;
+
+/**
+ * Writes a line for every request to the access log, in the Common Log
+ * Format followed by the time taken in seconds, e.g.
+ *
+ * <pre>
+ * 127.0.0.1 - - [17/Oct/2026:10:15:32 +0000] "GET /index.html HTTP/1.1" 200 122 0.000215
+ * </pre>
+ *
+ * Connection threads never touch the disk and never format anything. They
+ * claim a slot in a ring of preallocated records with a compare and set,
+ * fill it in and publish it. The method, URI and version are kept as the
+ * strings the request was parsed into, not copied. A background thread
+ * formats the published records and writes them in batches. If the writer falls so far behind that the ring is full, new
+ * records are dropped and counted instead of making requests wait.
+ * <p>
+ * When the file grows past its size limit it is renamed to
+ * <tt>access.log.1</tt>, older files move up by one, the oldest is deleted,
+ * and a new file is started.
+ */
+public class AccessLog {
+	/**
+	 * How long the writer sleeps when there is nothing to write.
+	 */
+	private static final long IDLE_NANOS = 10000000L;
+
+	/**
+	 * The most records written before the file is flushed.
+	 */
+	private static final int MAX_BATCH = 1024;
+
+	private static final DateTimeFormatter TIME_FORMAT = DateTimeFormatter
+			.ofPattern("dd/MMM/yyyy:HH:mm:ss Z", Locale.US).withZone(
+					ZoneOffset.UTC);
+
+	private File file;
+	private long maxBytes;
+	private int maxFiles;
+
+	// The ring. A record is published when its slot holds its sequence.
+	private int mask;
+	private AtomicLongArray published;
+	private long[] times;
+	private InetAddress[] addresses;
+	private String[] methods;
+	private String[] uris;
+	private String[] versions;
+	private int[] statuses;
+	private long[] lengths;
+	private long[] latencies;
+
+	private AtomicLong claimed;
+	private volatile long consumed;
+	private LongAdder dropped;
+	private LongAdder written;
+
+	private OutputStream out;
+	private long fileBytes;
+	private long timeSecond = -1;
+	private String timeText;
+	private Thread writer;
+	private volatile boolean running;
+
+	/**
+	 * @param file The file to write to. Lines are added to what is there.
+	 * @param capacity The number of records the ring holds, rounded up to a
+	 *            power of two.
+	 * @param maxBytes The size at which the file is rotated.
+	 * @param maxFiles The number of rotated files to keep.
+	 * @throws IOException If the file cannot be opened.
+	 */
+	public AccessLog(File file, int capacity, long maxBytes, int maxFiles)
+			throws IOException {
+		this.file = file;
+		this.maxBytes = maxBytes;
+		this.maxFiles = maxFiles;
+
+		int size = Integer.highestOneBit(Math.max(capacity - 1, 1)) << 1;
+		this.mask = size - 1;
+		this.published = new AtomicLongArray(size);
+		for (int i = 0; i < size; i++) {
+			this.published.set(i, -1);
+		}
+		this.times = new long[size];
+		this.addresses = new InetAddress[size];
+		this.methods = new String[size];
+		this.uris = new String[size];
+		this.versions = new String[size];
+		this.statuses = new int[size];
+		this.lengths = new long[size];
+		this.latencies = new long[size];
+
+		this.claimed = new AtomicLong();
+		this.dropped = new LongAdder();
+		this.written = new LongAdder();
+		open();
+
+		this.running = true;
+		this.writer = new Thread("sws-access-log") {
+			public void run() {
+				writeLoop();
+			}
+		};
+		this.writer.setDaemon(true);
+		this.writer.start();
+	}
+
+	/**
+	 * Records a request. Never waits: if the ring is full the record is
+	 * dropped.
+	 *
+	 * @param address The address of the client.
+	 * @param request The request, which must still be valid.
+	 * @param response The response to it.
+	 * @param nanos How long it took to answer, in nanoseconds.
+	 * @return <tt>false</tt> if the record was dropped
+	 */
+	public boolean log(InetAddress address, HttpRequest request,
+			HttpResponse response, long nanos) {
+		long sequence;
+		do {
+			sequence = this.claimed.get();
+			if (sequence - this.consumed > this.mask) {
+				this.dropped.increment();
+				return false;
+			}
+		} while (!this.claimed.compareAndSet(sequence, sequence + 1));
+
+		int slot = (int) sequence & this.mask;
+		this.times[slot] = System.currentTimeMillis();
+		this.addresses[slot] = address;
+		this.methods[slot] = request.getMethod();
+		this.uris[slot] = request.getUri();
+		this.versions[slot] = request.getVersion();
+		this.statuses[slot] = response.getStatus();
+		this.lengths[slot] = getBodyLength(response);
+		this.latencies[slot] = nanos;
+		// Publishing the sequence makes the fields above visible to the writer
+		this.published.lazySet(slot, sequence);
+		return true;
+	}
+
+	/**
+	 * Gets the number of body bytes of the response from what is known
+	 * before it is written.
+	 */
+	private static long getBodyLength(HttpResponse response) {
+		List<ByteRange> ranges = response.getRanges();
+		if (ranges != null) {
+			long length = 0;
+			for (ByteRange range : ranges) {
+				length += range.getLength();
+			}
+			return length;
+		}
+		ByteBuffer body = response.getBody();
+		if (body != null)
+			return body.limit();
+		String length = response.getHeader().get(Protocol.CONTENT_LENGTH);
+		if (length == null)
+			return 0;
+		try {
+			return Long.parseLong(length);
+		} catch (NumberFormatException e) {
+			return 0;
+		}
+	}
+
+	/**
+	 * Takes published records off the ring and writes them, until the log is
+	 * closed and everything published has been written.
+	 */
+	private void writeLoop() {
+		StringBuilder line = new StringBuilder(256);
+		for (;;) {
+			boolean stopping = !this.running;
+			long next = this.consumed;
+			int batch = 0;
+			while (batch < MAX_BATCH
+					&& this.published.get((int) next & this.mask) == next) {
+				int slot = (int) next & this.mask;
+				line.setLength(0);
+				format(line, slot);
+				// Let go of the request's strings before handing back the slot
+				this.addresses[slot] = null;
+				this.methods[slot] = null;
+				this.uris[slot] = null;
+				this.versions[slot] = null;
+				this.consumed = ++next;
+				batch++;
+				write(line);
+			}
+			if (batch > 0) {
+				this.written.add(batch);
+				flush();
+			} else if (stopping) {
+				break;
+			} else {
+				LockSupport.parkNanos(IDLE_NANOS);
+			}
+		}
+		try {
+			this.out.close();
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+	}
+
+	private void format(StringBuilder line, int slot) {
+		long second = this.times[slot] / 1000;
+		if (second != this.timeSecond) {
+			this.timeText = TIME_FORMAT.format(Instant.ofEpochSecond(second));
+			this.timeSecond = second;
+		}
+		InetAddress address = this.addresses[slot];
+		line.append(address == null ? "-" : address.getHostAddress());
+		line.append(" - - [").append(this.timeText).append("] \"");
+		appendEscaped(line, this.methods[slot]);
+		line.append(' ');
+		appendEscaped(line, this.uris[slot]);
+		line.append(' ');
+		appendEscaped(line, this.versions[slot]);
+		line.append("\" ").append(this.statuses[slot]).append(' ');
+		long length = this.lengths[slot];
+		if (length > 0)
+			line.append(length);
+		else
+			line.append('-');
+		long micros = this.latencies[slot] / 1000;
+		line.append(' ').append(micros / 1000000).append('.');
+		String fraction = Long.toString(micros % 1000000);
+		for (int i = fraction.length(); i < 6; i++) {
+			line.append('0');
+		}
+		line.append(fraction).append('\n');
+	}
+
+	/**
+	 * Appends what the client sent, so that it cannot break the line or the
+	 * quotes.
+	 */
+	private static void appendEscaped(StringBuilder line, String text) {
+		for (int i = 0; i < text.length(); i++) {
+			char c = text.charAt(i);
+			if (c == '"' || c == '\\')
+				line.append('\\').append(c);
+			else if (c < ' ' || c == 127)
+				line.append("\\x").append(Character.forDigit(c >> 4, 16))
+						.append(Character.forDigit(c & 15, 16));
+			else
+				line.append(c);
+		}
+	}
+
+	private void write(StringBuilder line) {
+		try {
+			if (this.fileBytes >= this.maxBytes)
+				rotate();
+			// URIs may hold characters that take more than a byte
+			byte[] bytes = line.toString().getBytes(StandardCharsets.UTF_8);
+			this.out.write(bytes);
+			this.fileBytes += bytes.length;
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+	}
+
+	private void flush() {
+		try {
+			this.out.flush();
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+	}
+
+	private void open() throws IOException {
+		this.out = new BufferedOutputStream(new FileOutputStream(this.file,
+				true), Protocol.CHUNK_LENGTH * 8);
+		this.fileBytes = this.file.length();
+	}
+
+	/**
+	 * Moves <tt>access.log.1</tt> to <tt>access.log.2</tt> and so on, the
+	 * current file to <tt>access.log.1</tt>, and starts a new one.
+	 */
+	private void rotate() throws IOException {
+		this.out.close();
+		String name = this.file.getPath();
+		new File(name + "." + this.maxFiles).delete();
+		for (int i = this.maxFiles - 1; i >= 1; i--) {
+			File older = new File(name + "." + i);
+			if (older.exists())
+				older.renameTo(new File(name + "." + (i + 1)));
+		}
+		if (this.maxFiles > 0)
+			this.file.renameTo(new File(name + ".1"));
+		else
+			this.file.delete();
+		open();
+	}
+
+	/**
+	 * Writes what is left in the ring and closes the file.
+	 */
+	public void close() {
+		this.running = false;
+		LockSupport.unpark(this.writer);
+		try {
+			this.writer.join();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * @return the number of records dropped because the ring was full
+	 */
+	public long getDroppedCount() {
+		return this.dropped.sum();
+	}
+
+	/**
+	 * @return the number of records written
+	 */
+	public long getWrittenCount() {
+		return this.written.sum();
+	}
+}
@@ -0,0 +1,344 @@
+/*
+ * AccessRules.java
+ * Oct 17, 2026
+ *
+ * Simple Web Server (SWS) for CSSE 477
+ *
+ * Copyright (C) 2012 Chandan Raj Rupakheti
+ *
+ * This program is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation, either
+ * version 3 of the License, or any later version.
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/lgpl.html>.
+ *
+ */
+
+
+package server;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+
+import protocol.Protocol;
+
+/**
+ * Decides which paths below the root directory may be served. The rules are
+ * read from a file with one rule per line, a status code followed by a
+ * pattern:
+ *
+ * <pre>
+ * # Lines starting with # are comments
+ * 404 /hidden.html      one file
+ * 403 /private/         a directory and everything below it
+ * 410 /old/*.html       a glob, * and ? never match a /
+ * 403 /logs/**&#47;*.gz    ** matches any number of directories
+ * 404 *.bak             no leading /: matches in any directory
+ * 200 /private/pub/     200 allows what an earlier rule denies
+ * </pre>
+ *
+ * The status is 200, 403, 404 or 410. When several rules match, the last one
+ * in the file wins.
+ * <p>
+ * The patterns are compiled into a trie of path segments, which is run like
+ * an automaton over the segments of a path. Literal segments and extensions
+ * such as <tt>*.bak</tt> are looked up in hash maps, so matching a path takes
+ * time in proportion to its length however many rules there are. Only other
+ * globs are tried one by one, and only those at the directories the path
+ * actually passes through.
+ * <p>
+ * A compiled set of rules is immutable and can be shared by all threads.
+ */
+public class AccessRules {
+	/**
+	 * The rules used when no rules file is given: the two example pages the
+	 * server has always treated specially.
+	 */
+	public static final List<String> DEFAULT_RULES = Arrays.asList(
+			"403 /forbidden.html", "404 /hidden.html");
+
+	private static final String ANY_DEPTH = "**";
+
+	/**
+	 * A state of the automaton, reached after matching some segments of a
+	 * path.
+	 */
+	private static class Node {
+		private HashMap<String, Node> children;
+		private HashMap<String, Node> extensions;
+		private ArrayList<String> globs;
+		private ArrayList<Node> globChildren;
+		private Node anyDepth;
+		private boolean loops;
+		private int rule = -1;
+	}
+
+	private Node root;
+	private int[] statuses;
+
+	private AccessRules(Node root, int[] statuses) {
+		this.root = root;
+		this.statuses = statuses;
+	}
+
+	/**
+	 * Compiles the {@link #DEFAULT_RULES}.
+	 *
+	 * @return the compiled rules
+	 */
+	public static AccessRules createDefault() {
+		try {
+			return compile(DEFAULT_RULES);
+		} catch (ParseException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	/**
+	 * Reads and compiles a rules file.
+	 *
+	 * @param file The rules file.
+	 * @return the compiled rules
+	 * @throws IOException If the file cannot be read.
+	 * @throws ParseException If a rule is malformed; the error offset is the
+	 *             line number.
+	 */
+	public static AccessRules load(File file) throws IOException,
+			ParseException {
+		BufferedReader reader = Files.newBufferedReader(file.toPath(),
+				StandardCharsets.UTF_8);
+		try {
+			List<String> lines = new ArrayList<String>();
+			String line;
+			while ((line = reader.readLine()) != null) {
+				lines.add(line);
+			}
+			return compile(lines);
+		} finally {
+			reader.close();
+		}
+	}
+
+	/**
+	 * Compiles rules given as the lines of a rules file.
+	 *
+	 * @param lines The lines.
+	 * @return the compiled rules
+	 * @throws ParseException If a rule is malformed; the error offset is the
+	 *             line number.
+	 */
+	public static AccessRules compile(List<String> lines)
+			throws ParseException {
+		Node root = new Node();
+		int[] statuses = new int[lines.size()];
+		int count = 0;
+		for (int i = 0; i < lines.size(); i++) {
+			String line = lines.get(i).trim();
+			if (line.isEmpty() || line.startsWith("#"))
+				continue;
+			String[] parts = line.split("\\s+");
+			if (parts.length != 2)
+				throw new ParseException("Line " + (i + 1)
+						+ ": expected a status and a pattern", i + 1);
+			int status = parseStatus(parts[0]);
+			if (status < 0)
+				throw new ParseException("Line " + (i + 1)
+						+ ": unsupported status " + parts[0], i + 1);
+			statuses[count] = status;
+			add(root, parts[1], count++);
+		}
+		return new AccessRules(root, Arrays.copyOf(statuses, count));
+	}
+
+	private static int parseStatus(String text) {
+		try {
+			int status = Integer.parseInt(text);
+			if (status == Protocol.OK_CODE || status == Protocol.FORBIDDEN_CODE
+					|| status == Protocol.NOT_FOUND_CODE
+					|| status == Protocol.GONE_CODE)
+				return status;
+		} catch (NumberFormatException e) {
+			// Not a number
+		}
+		return -1;
+	}
+
+	/**
+	 * Adds the states for a pattern to the trie.
+	 */
+	private static void add(Node root, String pattern, int rule) {
+		// A pattern without a leading / may match in any directory, one
+		// with a trailing / matches everything below the directory
+		if (!pattern.startsWith("/"))
+			pattern = ANY_DEPTH + "/" + pattern;
+		if (pattern.endsWith("/"))
+			pattern = pattern + ANY_DEPTH;
+
+		Node node = root;
+		for (String segment : pattern.split("/")) {
+			if (segment.isEmpty())
+				continue;
+			if (segment.equals(ANY_DEPTH)) {
+				if (node.anyDepth == null) {
+					node.anyDepth = new Node();
+					node.anyDepth.loops = true;
+				}
+				node = node.anyDepth;
+			} else if (isExtension(segment)) {
+				if (node.extensions == null)
+					node.extensions = new HashMap<String, Node>();
+				node = child(node.extensions, segment.substring(1));
+			} else if (isGlob(segment)) {
+				if (node.globs == null) {
+					node.globs = new ArrayList<String>();
+					node.globChildren = new ArrayList<Node>();
+				}
+				int index = node.globs.indexOf(segment);
+				if (index < 0) {
+					node.globs.add(segment);
+					node.globChildren.add(new Node());
+					index = node.globs.size() - 1;
+				}
+				node = node.globChildren.get(index);
+			} else {
+				if (node.children == null)
+					node.children = new HashMap<String, Node>();
+				node = child(node.children, segment);
+			}
+		}
+		node.rule = rule;
+	}
+
+	private static Node child(HashMap<String, Node> children, String key) {
+		Node child = children.get(key);
+		if (child == null) {
+			child = new Node();
+			children.put(key, child);
+		}
+		return child;
+	}
+
+	/**
+	 * Checks for e.g. <tt>*.bak</tt>: a star and a suffix that is a plain
+	 * file name extension.
+	 */
+	private static boolean isExtension(String segment) {
+		return segment.length() > 2 && segment.charAt(0) == '*'
+				&& segment.lastIndexOf('.') == 1 && !isGlob(segment.substring(1));
+	}
+
+	private static boolean isGlob(String segment) {
+		return segment.indexOf('*') >= 0 || segment.indexOf('?') >= 0;
+	}
+
+	/**
+	 * Finds the status for a path.
+	 *
+	 * @param path The path below the root directory, starting with a /.
+	 * @return the status of the last rule that matches the path, or
+	 *         {@link Protocol#OK_CODE} if none does
+	 */
+	public int match(String path) {
+		ArrayList<Node> active = new ArrayList<Node>();
+		ArrayList<Node> next = new ArrayList<Node>();
+		enter(active, this.root);
+
+		int start = 0;
+		while (start < path.length() && !active.isEmpty()) {
+			int end = path.indexOf('/', start);
+			if (end < 0)
+				end = path.length();
+			if (end > start) {
+				String segment = path.substring(start, end);
+				int dot = segment.lastIndexOf('.');
+				String extension = dot > 0 ? segment.substring(dot) : null;
+				for (Node node : active) {
+					if (node.loops)
+						enter(next, node);
+					if (node.children != null)
+						enter(next, node.children.get(segment));
+					if (node.extensions != null && extension != null)
+						enter(next, node.extensions.get(extension));
+					if (node.globs != null) {
+						for (int i = 0; i < node.globs.size(); i++) {
+							if (matchesGlob(node.globs.get(i), segment))
+								enter(next, node.globChildren.get(i));
+						}
+					}
+				}
+				ArrayList<Node> swap = active;
+				active = next;
+				next = swap;
+				next.clear();
+			}
+			start = end + 1;
+		}
+
+		int rule = -1;
+		for (Node node : active) {
+			rule = Math.max(rule, node.rule);
+		}
+		return rule < 0 ? Protocol.OK_CODE : this.statuses[rule];
+	}
+
+	/**
+	 * Adds a state, and the state for a following <tt>**</tt> that may match
+	 * no segment at all.
+	 */
+	private static void enter(List<Node> states, Node node) {
+		while (node != null && !states.contains(node)) {
+			states.add(node);
+			node = node.anyDepth;
+		}
+	}
+
+	/**
+	 * Matches a segment against a glob where * stands for any characters and
+	 * ? for one character.
+	 */
+	static boolean matchesGlob(String glob, String text) {
+		int g = 0;
+		int t = 0;
+		int star = -1;
+		int starText = 0;
+		while (t < text.length()) {
+			if (g < glob.length()
+					&& (glob.charAt(g) == '?' || glob.charAt(g) == text.charAt(t))) {
+				g++;
+				t++;
+			} else if (g < glob.length() && glob.charAt(g) == '*') {
+				star = g++;
+				starText = t;
+			} else if (star >= 0) {
+				// Let the last star swallow one more character
+				g = star + 1;
+				t = ++starText;
+			} else {
+				return false;
+			}
+		}
+		while (g < glob.length() && glob.charAt(g) == '*')
+			g++;
+		return g == glob.length();
+	}
+
+	/**
+	 * @return the number of rules
+	 */
+	public int getRuleCount() {
+		return this.statuses.length;
+	}
+}
@@ -0,0 +1,151 @@
+/*
+ * Blacklist.java
+ * Oct 17, 2026
+ *
+ * Simple Web Server (SWS) for CSSE 477
+ *
+ * Copyright (C) 2012 Chandan Raj Rupakheti
+ *
+ * This program is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation, either
+ * version 3 of the License, or any later version.
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/lgpl.html>.
+ *
+ */
+
+package server;
+
+import java.net.InetAddress;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * The client addresses that are banned for a while, e.g. for making too many
+ * requests.
+ * <p>
+ * Bans are looked up in a map. To forget them once they run out, every ban
+ * is also put in a hashed timing wheel: a ring of slots, one per tick, where
+ * a ban goes into the slot of the tick it ends in. {@link #expire()} is
+ * called once per tick and only looks at the slots of the ticks that passed
+ * since the last call, so each ban costs a constant amount of work no matter
+ * how many there are. Bans longer than one turn of the wheel are passed over
+ * once per turn.
+ * <p>
+ * A ban that has run out is not honoured even if the wheel has not got to
+ * it yet, so bans end on time however late {@link #expire()} runs.
+ */
+public class Blacklist {
+	/**
+	 * The time covered by one slot of the wheel.
+	 */
+	public static final long TICK_MILLIS = 1000;
+
+	/**
+	 * The number of slots, a power of two. With one second per tick a turn
+	 * of the wheel takes about 17 minutes.
+	 */
+	private static final int WHEEL_SIZE = 1024;
+
+	private static class Ban {
+		private final InetAddress address;
+		private final long deadline;
+		private final long tick;
+
+		public Ban(InetAddress address, long deadline, long tick) {
+			this.address = address;
+			this.deadline = deadline;
+			this.tick = tick;
+		}
+	}
+
+	private ConcurrentHashMap<InetAddress, Ban> bans;
+	private ConcurrentLinkedQueue<Ban>[] wheel;
+	private long start;
+	private long tickNanos;
+	// Only changed by the thread calling expire()
+	private volatile long lastExpiredTick;
+
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	public Blacklist() {
+		this.bans = new ConcurrentHashMap<InetAddress, Ban>();
+		this.wheel = new ConcurrentLinkedQueue[WHEEL_SIZE];
+		for (int i = 0; i < WHEEL_SIZE; i++) {
+			this.wheel[i] = new ConcurrentLinkedQueue<Ban>();
+		}
+		this.start = System.nanoTime();
+		this.tickNanos = TICK_MILLIS * 1000000L;
+		this.lastExpiredTick = 0;
+	}
+
+	/**
+	 * Bans the address. A new ban replaces the one the address may have.
+	 *
+	 * @param address The address of the client.
+	 * @param millis How long the ban lasts.
+	 */
+	public void ban(InetAddress address, long millis) {
+		long deadline = System.nanoTime() + millis * 1000000L;
+		// Round up, so the wheel never drops a ban before it ends
+		long tick = (deadline - this.start + this.tickNanos - 1) / this.tickNanos;
+		// A slot that was already passed would not be looked at for a turn
+		tick = Math.max(tick, this.lastExpiredTick + 1);
+		Ban ban = new Ban(address, deadline, tick);
+		this.bans.put(address, ban);
+		this.wheel[(int) (tick & (WHEEL_SIZE - 1))].add(ban);
+	}
+
+	/**
+	 * Checks whether the address is banned right now.
+	 *
+	 * @param address The address of the client.
+	 * @return <tt>true</tt> if the client should be turned away
+	 */
+	public boolean isBanned(InetAddress address) {
+		Ban ban = this.bans.get(address);
+		if (ban == null)
+			return false;
+		if (ban.deadline - System.nanoTime() <= 0) {
+			this.bans.remove(address, ban);
+			return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Forgets the bans that ended in the ticks since the last call. Must only
+	 * be called from one thread, once per {@link #TICK_MILLIS}.
+	 */
+	public void expire() {
+		long now = (System.nanoTime() - this.start) / this.tickNanos;
+		long tick = this.lastExpiredTick;
+		// After a long pause, one turn of the wheel visits every slot
+		long first = Math.max(tick + 1, now - WHEEL_SIZE + 1);
+		for (tick = first; tick <= now; tick++) {
+			Iterator<Ban> i = this.wheel[(int) (tick & (WHEEL_SIZE - 1))]
+					.iterator();
+			while (i.hasNext()) {
+				Ban ban = i.next();
+				if (ban.tick <= now) {
+					i.remove();
+					// Only if it has not been replaced by a newer ban
+					this.bans.remove(ban.address, ban);
+				}
+			}
+		}
+		this.lastExpiredTick = now;
+	}
+
+	/**
+	 * @return the number of addresses that are banned
+	 */
+	public int getBanCount() {
+		return this.bans.size();
+	}
+}
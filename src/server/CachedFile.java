@@ -0,0 +1,112 @@
+/*
+ * CachedFile.java
+ * Oct 17, 2026
+ *
+ * Simple Web Server (SWS) for CSSE 477
+ *
+ * Copyright (C) 2012 Chandan Raj Rupakheti
+ *
+ * This program is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation, either
+ * version 3 of the License, or any later version.
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/lgpl.html>.
+ *
+ */
+
+package server;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+
+import protocol.HttpResponseFactory;
+
+/**
+ * The contents of a file held by the {@link ServerCache}, together with what
+ * a response needs to know about the file. Everything here describes one
+ * version of the file; when the file changes the cache drops the whole
+ * object and reads a new one.
+ * <p>
+ * The contents may be compressed with a content coding, in which case the
+ * length is that of the compressed bytes.
+ */
+public class CachedFile {
+	final String path;
+	final byte[] data;
+	final long lastModified;
+	final String encoding;
+	final String etag;
+	private volatile byte[] headBlock;
+
+	CachedFile(String path, byte[] data, long lastModified, String encoding,
+			String etag) {
+		this.path = path;
+		this.data = data;
+		this.lastModified = lastModified;
+		this.encoding = encoding;
+		this.etag = etag;
+	}
+
+	/**
+	 * Gets the contents of the file, in the content coding of this object.
+	 *
+	 * @return a read-only buffer over the contents
+	 */
+	public ByteBuffer getBody() {
+		return ByteBuffer.wrap(this.data).asReadOnlyBuffer();
+	}
+
+	/**
+	 * @return the length of the contents in bytes
+	 */
+	public long getLength() {
+		return this.data.length;
+	}
+
+	/**
+	 * @return the content coding of the contents, or <tt>null</tt> if they
+	 *         are the file as it is
+	 */
+	public String getEncoding() {
+		return this.encoding;
+	}
+
+	/**
+	 * @return the entity tag of the contents, quoted
+	 */
+	public String getETag() {
+		return this.etag;
+	}
+
+	/**
+	 * @return the time the file was last modified, in milliseconds since the
+	 *         epoch
+	 */
+	public long getLastModified() {
+		return this.lastModified;
+	}
+
+	/**
+	 * Gets the status line and the header fields of a 200 OK response for
+	 * this file that are the same for every request, already encoded. The
+	 * block is built on first use and then shared by all responses.
+	 *
+	 * @return the encoded head block, not to be modified
+	 */
+	public byte[] getHeadBlock() {
+		byte[] block = this.headBlock;
+		if (block == null) {
+			// Racing threads build the same bytes, so either copy will do
+			block = HttpResponseFactory.createHeadBlock(new File(this.path)
+					.getName(), this.data.length, this.lastModified, this.encoding,
+						this.etag);
+			this.headBlock = block;
+		}
+		return block;
+	}
+}
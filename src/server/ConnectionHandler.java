@@ -21,16 +21,15 @@
 
 package server;
 
-import java.io.File;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.net.Socket;
 import java.net.SocketException;
 import java.net.SocketTimeoutException;
-import java.text.SimpleDateFormat;
-import java.util.Map;
+import java.nio.channels.SocketChannel;
 
 import protocol.HttpRequest;
+import protocol.HttpRequestParser;
 import protocol.HttpResponse;
 import protocol.HttpResponseFactory;
 import protocol.Protocol;
@@ -45,15 +44,31 @@ import protocol.ProtocolException;
  * @author Chandan R. Rupakheti (rupakhet@rose-hulman.edu)
  */
 public class ConnectionHandler implements Runnable {
+	/**
+	 * The most responses to pipelined requests that are held back before
+	 * they are written.
+	 */
+	private static final int MAX_PIPELINED = 16;
+
 	private Server server;
 	private Socket socket;
 	private ServerCache serverCache;
+	private RequestProcessor processor;
+	private HttpRequestParser parser;
+	private OutboundQueue out;
+	private int answered;
+
+	// Set when a worker of the pool runs this handler
+	WorkerPool pool;
 
 	public ConnectionHandler(Server server, Socket socket,
 			ServerCache serverCache) {
 		this.server = server;
 		this.socket = socket;
 		this.serverCache = serverCache;
+		this.processor = new RequestProcessor(server);
+		this.parser = new HttpRequestParser();
+		this.out = new OutboundQueue(server.getCounters());
 	}
 
 	/**
@@ -70,9 +85,29 @@ public class ConnectionHandler implements Runnable {
 	 * (web browser).
 	 */
 	public void run() {
-		// Get the start time
-		long start = System.currentTimeMillis();
+		boolean parked = false;
+		try {
+			parked = serve();
+		} finally {
+			// Every way out closes the connection, except handing it back to
+			// the pool to wait for its next request
+			if (!parked) {
+				try {
+					this.socket.close();
+				} catch (Exception e) {
+					// We are closing anyway
+				}
+			}
+		}
+	}
 
+	/**
+	 * Answers requests until the connection is done with.
+	 *
+	 * @return <tt>true</tt> if the connection was handed to the pool and must
+	 *         stay open
+	 */
+	private boolean serve() {
 		InputStream inStream = null;
 		OutputStream outStream = null;
 
@@ -92,16 +127,14 @@ public class ConnectionHandler implements Runnable {
 			// stream
 			// May be have text to log this for further analysis?
 			e.printStackTrace();
-
-			// Increment number of connections by 1
-			server.incrementConnections(1);
-			// Get the end time
-			long end = System.currentTimeMillis();
-			this.server.incrementServiceTime(end - start);
-			return;
+			return false;
 		}
 
-		// Loop for persistent connections.
+		// Loop for persistent connections. Responses to requests the client
+		// pipelined are queued and written together once we would otherwise
+		// have to wait for the client. A pool worker does not wait for the
+		// client's next request, it hands the connection to the pool instead.
+		int pipelined = 0;
 		for (;;) {
 			boolean persistent = false;
 			// At this point we have the input and output stream of the socket
@@ -109,10 +142,25 @@ public class ConnectionHandler implements Runnable {
 			HttpRequest request = null;
 			HttpResponse response = null;
 			try {
-				request = HttpRequest.read(inStream);
+				if (!this.parser.hasBufferedInput() || pipelined == MAX_PIPELINED) {
+					flush();
+					if (this.pool != null && pipelined > 0
+							&& !this.parser.hasBufferedInput()
+							&& this.socket.getChannel() != null) {
+						this.pool.park(this);
+						return true;
+					}
+					pipelined = 0;
+				}
+				request = this.parser.read(inStream);
+				if (request == null) {
+					// The client closed the connection between requests
+					flush();
+					return false;
+				}
 				if(this.server.DOSCheck(this.socket)){
-					this.socket.close();
-					return;
+					this.out.clear();
+					return false;
 				}
 				// System.out.println(request);
 			} catch (ProtocolException pe) {
@@ -144,139 +192,62 @@ public class ConnectionHandler implements Runnable {
 				// the
 				// socket
 				try {
-					response.write(outStream, this.serverCache);
+					send(response, outStream);
+					flush();
 					// System.out.println(response);
 				} catch (Exception e) {
 					// We will ignore this exception
 					e.printStackTrace();
 				}
-
-				// Increment number of connections by 1
-				server.incrementConnections(1);
-				// Get the end time
-				long end = System.currentTimeMillis();
-				this.server.incrementServiceTime(end - start);
-				return;
+				this.out.clear();
+				return false;
 			}
 
 			// We reached here means no error so far, so lets process further
-			try {
-				// Fill in the code to create a response for version mismatch.
-				// You may want to use constants such as Protocol.VERSION,
-				// Protocol.NOT_SUPPORTED_CODE, and more.
-				// You can check if the version matches as follows
-				if (!request.getVersion().equalsIgnoreCase(Protocol.VERSION)) {
-					// Here you checked that the "Protocol.VERSION" string is
-					// not
-					// equal to the
-					// "request.version" string ignoring the case of the letters
-					// in
-					// both strings
-					// TODO: Fill in the rest of the code here
-				} else if (request.getMethod().equalsIgnoreCase(Protocol.GET)) {
-					Map<String, String> header = request.getHeader();
-					String date = header.get("if-modified-since");
-					String connection = header.get("connection");
-					persistent = "Keep-Alive".equals(connection);
-					String cResponse = persistent ? Protocol.OPEN : Protocol.CLOSE;
-					// String hostName = header.get("host");
-					//
-					// Handling GET request here
-					// Get relative URI path from request
-					String uri = request.getUri();
-					// Get root directory path from server
-					String rootDirectory = server.getRootDirectory();
-					// Combine them together to form absolute file path
-					File file = new File(rootDirectory + uri);
-					// Check if the file exists
-					if (file.exists()) {
-						if(server.getHiddenPages().contains(file.getAbsolutePath())){
-							response = HttpResponseFactory
-									.create404NotFound(cResponse);
-						} else
-						if(server.getForbiddenPages().contains(file.getAbsolutePath())){
-							response = HttpResponseFactory
-									.create403Forbidden(cResponse);
-						} else
-						if (file.isDirectory()) {
-							// Look for default index.html file in a directory
-							String location = rootDirectory + uri
-									+ System.getProperty("file.separator")
-									+ Protocol.DEFAULT_FILE;
-							file = new File(location);
-							if (file.exists()) {
-								// Lets create 200 OK response
-								// (or 304 if appropriate)
-								SimpleDateFormat sdf = new SimpleDateFormat(
-										"EEE MMM dd HH:mm:ss z yyyy");
-								if (sdf.format(file.lastModified())
-										.equals(date))
-									response = HttpResponseFactory
-											.create304NotModified(cResponse);
-								else
-									response = HttpResponseFactory.create200OK(
-											file, cResponse);
-							} else {
-								// File does not exist so lets create 404 file
-								// not
-								// found code
-								response = HttpResponseFactory
-										.create404NotFound(cResponse);
-							}
-						} else { // Its a file
-									// Lets create 200 OK response
-									// (or 304 if appropriate)
-							SimpleDateFormat sdf = new SimpleDateFormat(
-									"EEE MMM dd HH:mm:ss z yyyy");
-							if (sdf.format(file.lastModified()).equals(date))
-								response = HttpResponseFactory
-										.create304NotModified(cResponse);
-							else
-								response = HttpResponseFactory.create200OK(
-										file, cResponse);
-						}
-					} else {
-						// File does not exist so lets create 404 file not found
-						// code
-						response = HttpResponseFactory
-								.create404NotFound(cResponse);
-					}
-				} else {
-					response = HttpResponseFactory
-							.create501NotImplemented(Protocol.CLOSE);
-				}
-			} catch (Exception e) {
-				e.printStackTrace();
-			}
-
-			// TODO: So far response could be null for protocol version
-			// mismatch.
-			// So this is a temporary patch for that problem and should be
-			// removed
-			// after a response object is created for protocol version mismatch.
-			if (response == null) {
-				response = HttpResponseFactory
-						.create400BadRequest(Protocol.CLOSE);
-			}
+			long requestStart = System.nanoTime();
+			response = this.processor.process(request);
+			persistent = RequestProcessor.isPersistent(response);
 
 			try {
-				// Write response and we are all done so close the socket
-				response.write(outStream, this.serverCache);
+				send(response, outStream);
+				this.server.requestAnswered(this.socket.getInetAddress(),
+						request, response, System.nanoTime() - requestStart,
+						this.answered++ > 0);
+				pipelined++;
 				// System.out.println(response);
 				if(!persistent){
-					socket.close();
-					break;
+					// Write what is left and we are all done
+					flush();
+					return false;
 				}
 			} catch (Exception e) {
-				// We will ignore this exception
+				// The client is gone, there is nobody left to answer
 				e.printStackTrace();
+				this.out.clear();
+				return false;
 			}
 		}
+	}
 
-		// Increment number of connections by 1
-		server.incrementConnections(1);
-		// Get the end time
-		long end = System.currentTimeMillis();
-		this.server.incrementServiceTime(end - start);
+	/**
+	 * Queues the response. Sockets accepted through a channel get the
+	 * response written by {@link #flush()} without copying file contents,
+	 * other sockets get it written right away.
+	 */
+	private void send(HttpResponse response, OutputStream outStream)
+			throws Exception {
+		if (this.socket.getChannel() != null)
+			this.out.add(response, this.serverCache);
+		else
+			response.write(outStream, this.serverCache);
+	}
+
+	/**
+	 * Writes all queued responses.
+	 */
+	private void flush() throws Exception {
+		SocketChannel channel = this.socket.getChannel();
+		if (channel != null && !this.out.isEmpty())
+			this.out.flush(channel);
 	}
 }
@@ -0,0 +1,237 @@
+/*
+ * EventLoop.java
+ * Oct 17, 2026
+ *
+ * Simple Web Server (SWS) for CSSE 477
+ *
+ * Copyright (C) 2012 Chandan Raj Rupakheti
+ *
+ * This program is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation, either
+ * version 3 of the License, or any later version.
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/lgpl.html>.
+ *
+ */
+
+package server;
+
+import java.io.IOException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Services connections with a fixed number of selector threads instead of a
+ * thread per connection. The accept thread hands every new
+ * {@link SocketChannel} to {@link #register(SocketChannel)}, which assigns it
+ * to one of the selector threads in round-robin order. From then on that
+ * thread reads, parses and answers requests on the channel without blocking,
+ * and an idle keep-alive connection costs nothing but its buffers.
+ * <p>
+ * A selector thread only answers requests it can answer from memory. When a
+ * file has to be looked up, read, mapped or compressed, a worker thread does
+ * that and hands the response back, and the connection takes no further
+ * requests meanwhile. The other connections of the selector are not held up.
+ */
+public class EventLoop {
+	/**
+	 * How long a selector waits before it looks for idle connections.
+	 */
+	private static final int SELECT_TIMEOUT = 1000;
+
+	/**
+	 * A single selector and the connections registered with it. Tasks given
+	 * to {@link #execute(Runnable)} run on the selector thread.
+	 */
+	private class SelectorThread extends Thread implements Executor {
+		private Selector selector;
+		private ConcurrentLinkedQueue<SocketChannel> pending;
+		private ConcurrentLinkedQueue<Runnable> tasks;
+		private volatile boolean loop;
+
+		public SelectorThread(int id) throws IOException {
+			super("sws-selector-" + id);
+			this.selector = Selector.open();
+			this.pending = new ConcurrentLinkedQueue<SocketChannel>();
+			this.tasks = new ConcurrentLinkedQueue<Runnable>();
+			this.loop = true;
+		}
+
+		public void add(SocketChannel channel) {
+			this.pending.add(channel);
+			this.selector.wakeup();
+		}
+
+		public void execute(Runnable task) {
+			this.tasks.add(task);
+			this.selector.wakeup();
+		}
+
+		public void run() {
+			while (loop) {
+				try {
+					this.selector.select(SELECT_TIMEOUT);
+				} catch (IOException e) {
+					e.printStackTrace();
+					break;
+				}
+				registerPending();
+				runTasks();
+
+				Iterator<SelectionKey> keys = this.selector.selectedKeys()
+						.iterator();
+				while (keys.hasNext()) {
+					SelectionKey key = keys.next();
+					keys.remove();
+					NioConnection connection = (NioConnection) key.attachment();
+					try {
+						if (key.isReadable())
+							connection.read();
+						else if (key.isWritable())
+							connection.write();
+					} catch (Exception e) {
+						// The client went away or the key was cancelled,
+						// either way we are done with this connection
+						connection.close();
+					}
+				}
+				closeIdle();
+			}
+			closeAll();
+		}
+
+		private void registerPending() {
+			SocketChannel channel;
+			while ((channel = this.pending.poll()) != null) {
+				try {
+					channel.configureBlocking(false);
+					SelectionKey key = channel.register(this.selector,
+							SelectionKey.OP_READ);
+					key.attach(new NioConnection(server, serverCache,
+							processor, channel, key, workers, this));
+				} catch (IOException e) {
+					e.printStackTrace();
+					try {
+						channel.close();
+					} catch (IOException e1) {
+						e1.printStackTrace();
+					}
+				}
+			}
+		}
+
+		private void runTasks() {
+			Runnable task;
+			while ((task = this.tasks.poll()) != null) {
+				task.run();
+			}
+		}
+
+		private void closeIdle() {
+			long now = System.currentTimeMillis();
+			for (SelectionKey key : this.selector.keys()) {
+				NioConnection connection = (NioConnection) key.attachment();
+				if (connection != null && connection.isIdle(now))
+					connection.expire();
+			}
+		}
+
+		private void closeAll() {
+			for (SelectionKey key : this.selector.keys()) {
+				NioConnection connection = (NioConnection) key.attachment();
+				if (connection != null)
+					connection.close();
+			}
+			try {
+				this.selector.close();
+			} catch (IOException e) {
+				e.printStackTrace();
+			}
+		}
+
+		public void stopLoop() {
+			this.loop = false;
+			this.selector.wakeup();
+		}
+	}
+
+	private Server server;
+	private ServerCache serverCache;
+	private RequestProcessor processor;
+	private SelectorThread[] selectors;
+	private ExecutorService workers;
+	private int next;
+
+	/**
+	 * @param server The server whose connections are serviced.
+	 * @param serverCache The cache used when sending files.
+	 * @param threads The number of selector threads.
+	 * @param workerThreads The number of threads for requests that need the
+	 *            file system.
+	 * @throws IOException If a selector cannot be opened.
+	 */
+	public EventLoop(Server server, ServerCache serverCache, int threads,
+			int workerThreads) throws IOException {
+		this.server = server;
+		this.serverCache = serverCache;
+		this.processor = new RequestProcessor(server);
+		this.selectors = new SelectorThread[threads];
+		for (int i = 0; i < threads; i++) {
+			this.selectors[i] = new SelectorThread(i);
+		}
+		final AtomicInteger ids = new AtomicInteger();
+		this.workers = Executors.newFixedThreadPool(workerThreads,
+				new ThreadFactory() {
+					public Thread newThread(Runnable task) {
+						Thread thread = new Thread(task, "sws-file-worker-"
+								+ ids.getAndIncrement());
+						thread.setDaemon(true);
+						return thread;
+					}
+				});
+	}
+
+	/**
+	 * Starts all the selector threads.
+	 */
+	public void start() {
+		for (SelectorThread selector : this.selectors) {
+			selector.start();
+		}
+	}
+
+	/**
+	 * Hands a newly accepted connection over to one of the selector threads.
+	 * Only the accept thread calls this method.
+	 *
+	 * @param channel The accepted connection.
+	 */
+	public void register(SocketChannel channel) {
+		SelectorThread selector = this.selectors[this.next];
+		this.next = (this.next + 1) % this.selectors.length;
+		selector.add(channel);
+	}
+
+	/**
+	 * Stops the selector threads and closes every open connection.
+	 */
+	public void shutdown() {
+		for (SelectorThread selector : this.selectors) {
+			selector.stopLoop();
+		}
+		this.workers.shutdown();
+	}
+}
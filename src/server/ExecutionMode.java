@@ -0,0 +1,84 @@
+/*
+ * ExecutionMode.java
+ * Oct 17, 2026
+ *
+ * Simple Web Server (SWS) for CSSE 477
+ *
+ * Copyright (C) 2012 Chandan Raj Rupakheti
+ *
+ * This program is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation, either
+ * version 3 of the License, or any later version.
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/lgpl.html>.
+ *
+ */
+
+package server;
+
+/**
+ * The ways in which the {@link Server} can service accepted connections.
+ */
+public enum ExecutionMode {
+	/**
+	 * Every connection gets its own platform thread running a
+	 * {@link ConnectionHandler}. This is the original behavior.
+	 */
+	THREAD_PER_CONNECTION("thread"),
+
+	/**
+	 * Every connection gets its own virtual thread running a
+	 * {@link ConnectionHandler}. The handler still blocks on the socket, but
+	 * a blocked virtual thread only holds on to a small heap-allocated stack.
+	 * Needs a Java 21 runtime, older runtimes fall back to
+	 * {@link #THREAD_PER_CONNECTION}.
+	 */
+	VIRTUAL_THREAD("virtual"),
+
+	/**
+	 * Connections are handled by a fixed {@link WorkerPool} with a bounded
+	 * queue. Connections that do not fit in the queue get a 503.
+	 */
+	WORKER_POOL("pool"),
+
+	/**
+	 * Connections are multiplexed over a small number of selector threads
+	 * (see {@link EventLoop}). Idle keep-alive connections do not hold a
+	 * thread.
+	 */
+	EVENT_LOOP("eventloop");
+
+	private String name;
+
+	private ExecutionMode(String name) {
+		this.name = name;
+	}
+
+	/**
+	 * The name used to select this mode on the command line.
+	 *
+	 * @return the name
+	 */
+	public String getName() {
+		return name;
+	}
+
+	/**
+	 * Finds the mode with the supplied name, ignoring case.
+	 *
+	 * @param name The name of the mode, e.g. "eventloop".
+	 * @return The matching mode or <tt>null</tt> if there is none.
+	 */
+	public static ExecutionMode fromName(String name) {
+		for (ExecutionMode mode : values()) {
+			if (mode.name.equalsIgnoreCase(name))
+				return mode;
+		}
+		return null;
+	}
+}
@@ -0,0 +1,41 @@
+/*
+ * FileChangeListener.java
+ * Oct 17, 2026
+ *
+ * Simple Web Server (SWS) for CSSE 477
+ *
+ * Copyright (C) 2012 Chandan Raj Rupakheti
+ *
+ * This program is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation, either
+ * version 3 of the License, or any later version.
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/lgpl.html>.
+ *
+ */
+
+package server;
+
+/**
+ * Gets told by the {@link FileWatcher} when files under the root directory
+ * change, so that anything remembered about them can be dropped.
+ */
+public interface FileChangeListener {
+	/**
+	 * Called when a file or directory was created, modified or deleted.
+	 *
+	 * @param path The absolute path of the file that changed.
+	 */
+	public void fileChanged(String path);
+
+	/**
+	 * Called when the watcher lost track of events, so that any file may
+	 * have changed.
+	 */
+	public void allFilesChanged();
+}
@@ -0,0 +1,161 @@
+/*
+ * FileWatcher.java
+ * Oct 17, 2026
+ *
+ * Simple Web Server (SWS) for CSSE 477
+ *
+ * Copyright (C) 2012 Chandan Raj Rupakheti
+ *
+ * This program is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation, either
+ * version 3 of the License, or any later version.
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/lgpl.html>.
+ *
+ */
+
+package server;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.HashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Watches the root directory of the server and all directories below it, and
+ * tells its {@link FileChangeListener}s about every file that is created,
+ * modified or deleted. This lets caches keep what they know about a file
+ * until it actually changes, instead of checking the file on every request.
+ */
+public class FileWatcher extends Thread {
+	private Path root;
+	private WatchService watchService;
+	private HashMap<WatchKey, Path> directories;
+	private CopyOnWriteArrayList<FileChangeListener> listeners;
+
+	/**
+	 * @param rootDirectory The directory to watch.
+	 * @throws IOException If the directory cannot be watched.
+	 */
+	public FileWatcher(String rootDirectory) throws IOException {
+		super("sws-file-watcher");
+		setDaemon(true);
+		this.root = Paths.get(rootDirectory).toAbsolutePath().normalize();
+		this.watchService = FileSystems.getDefault().newWatchService();
+		this.directories = new HashMap<WatchKey, Path>();
+		this.listeners = new CopyOnWriteArrayList<FileChangeListener>();
+		registerAll(this.root);
+	}
+
+	/**
+	 * Adds a listener to be told about changes.
+	 *
+	 * @param listener The listener.
+	 */
+	public void addListener(FileChangeListener listener) {
+		this.listeners.add(listener);
+	}
+
+	public void run() {
+		while (true) {
+			WatchKey key;
+			try {
+				key = this.watchService.take();
+			} catch (InterruptedException e) {
+				break;
+			} catch (ClosedWatchServiceException e) {
+				break;
+			}
+
+			Path directory = this.directories.get(key);
+			for (WatchEvent<?> event : key.pollEvents()) {
+				if (event.kind() == StandardWatchEventKinds.OVERFLOW
+						|| directory == null) {
+					for (FileChangeListener listener : this.listeners) {
+						listener.allFilesChanged();
+					}
+					continue;
+				}
+
+				Path path = directory.resolve((Path) event.context());
+				if (event.kind() == StandardWatchEventKinds.ENTRY_CREATE
+						&& Files.isDirectory(path)) {
+					try {
+						registerAll(path);
+					} catch (IOException e) {
+						e.printStackTrace();
+					}
+				}
+				fireFileChanged(path);
+			}
+
+			if (!key.reset()) {
+				// The directory is gone
+				this.directories.remove(key);
+				if (directory != null)
+					fireFileChanged(directory);
+			}
+		}
+	}
+
+	/**
+	 * Stops watching.
+	 */
+	public void stopWatching() {
+		try {
+			this.watchService.close();
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+	}
+
+	/**
+	 * Gets the path of a file in the form listeners are told about, so that
+	 * it can be used as a key that changes will find. The path is absolute
+	 * and has no <tt>.</tt> or <tt>..</tt> in it.
+	 *
+	 * @param file The file.
+	 * @return the normalized absolute path
+	 */
+	public static String pathOf(File file) {
+		return file.toPath().toAbsolutePath().normalize().toString();
+	}
+
+	private void fireFileChanged(Path path) {
+		String absolutePath = path.toString();
+		for (FileChangeListener listener : this.listeners) {
+			listener.fileChanged(absolutePath);
+		}
+	}
+
+	private void registerAll(Path start) throws IOException {
+		Files.walkFileTree(start, new SimpleFileVisitor<Path>() {
+			public FileVisitResult preVisitDirectory(Path dir,
+					BasicFileAttributes attrs) throws IOException {
+				WatchKey key = dir.register(watchService,
+						StandardWatchEventKinds.ENTRY_CREATE,
+						StandardWatchEventKinds.ENTRY_DELETE,
+						StandardWatchEventKinds.ENTRY_MODIFY);
+				directories.put(key, dir);
+				return FileVisitResult.CONTINUE;
+			}
+		});
+	}
+}
@@ -1,36 +1,75 @@
 package server;
 
-import java.text.DateFormat;
 import java.text.ParseException;
-import java.text.SimpleDateFormat;
-import java.util.Calendar;
+import java.time.DateTimeException;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeFormatterBuilder;
+import java.time.temporal.ChronoField;
 import java.util.Date;
-import java.util.GregorianCalendar;
-import java.util.TimeZone;
+import java.util.Locale;
 
+/**
+ * Converts between times and the date format of HTTP (RFC 7231, e.g.
+ * <tt>Sun, 06 Nov 1994 08:49:37 GMT</tt>). The formatters are immutable, so
+ * they are built once and shared by all threads.
+ */
 public class GMTConversion {
-	public static final String GMT_FORMAT = "EEE, d MMM yyyy HH:mm:ss z";
-	
+	public static final String GMT_FORMAT = "EEE, dd MMM yyyy HH:mm:ss 'GMT'";
+
+	private static final DateTimeFormatter IMF_FIXDATE = DateTimeFormatter
+			.ofPattern(GMT_FORMAT, Locale.US).withZone(ZoneOffset.UTC);
+
+	// Obsolete formats that clients may still send, e.g.
+	// Sunday, 06-Nov-94 08:49:37 GMT and Sun Nov  6 08:49:37 1994
+	private static final DateTimeFormatter RFC_850 = new DateTimeFormatterBuilder()
+			.appendPattern("EEEE, dd-MMM-")
+			.appendValueReduced(ChronoField.YEAR, 2, 2, 1970)
+			.appendPattern(" HH:mm:ss 'GMT'")
+			.toFormatter(Locale.US).withZone(ZoneOffset.UTC);
+	private static final DateTimeFormatter ASCTIME = DateTimeFormatter
+			.ofPattern("EEE MMM ppd HH:mm:ss yyyy", Locale.US).withZone(ZoneOffset.UTC);
+
 	public static String toGMTString(Date date) {
-		Calendar calendar = new GregorianCalendar();
-		calendar.setTimeZone(TimeZone.getTimeZone("GMT"));
+		return toGMTString(date.getTime());
+	}
 
-		DateFormat gmtFormat = new SimpleDateFormat(GMT_FORMAT);
-		gmtFormat.setCalendar(calendar);
-		
-		return gmtFormat.format(date);
+	/**
+	 * @param time Milliseconds since the epoch.
+	 * @return The time in the HTTP date format.
+	 */
+	public static String toGMTString(long time) {
+		return IMF_FIXDATE.format(Instant.ofEpochMilli(time));
 	}
-	
+
 	public static Date fromGMTString(String dateString) throws ParseException {
-		Calendar calendar = new GregorianCalendar();
-		calendar.setTimeZone(TimeZone.getTimeZone("GMT"));
+		long time = parse(dateString);
+		if(time < 0) {
+			throw new ParseException("Not an HTTP date: " + dateString, 0);
+		}
+		return new Date(time);
+	}
 
-		DateFormat gmtFormat = new SimpleDateFormat(GMT_FORMAT);
-		gmtFormat.setCalendar(calendar);
-	
-		return gmtFormat.parse(dateString);
+	/**
+	 * Parses a date in any of the formats HTTP allows.
+	 *
+	 * @param dateString The date as sent by a client.
+	 * @return Milliseconds since the epoch, or -1 if the date cannot be parsed.
+	 */
+	public static long parse(String dateString) {
+		dateString = dateString.trim();
+		DateTimeFormatter[] formats = { IMF_FIXDATE, RFC_850, ASCTIME };
+		for(DateTimeFormatter format : formats) {
+			try {
+				return Instant.from(format.parse(dateString)).toEpochMilli();
+			} catch (DateTimeException e) {
+				// Try the next format
+			}
+		}
+		return -1;
 	}
-	
+
 	public static void main(String[] args) throws Exception {
 		Date date = new Date();
 		System.out.println("From Any Timezone Date:\t" + date);
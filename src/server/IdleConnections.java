@@ -0,0 +1,185 @@
+/*
+ * IdleConnections.java
+ * Oct 17, 2026
+ *
+ * Simple Web Server (SWS) for CSSE 477
+ *
+ * Copyright (C) 2012 Chandan Raj Rupakheti
+ *
+ * This program is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation, either
+ * version 3 of the License, or any later version.
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/lgpl.html>.
+ *
+ */
+
+
+package server;
+
+import java.io.IOException;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import protocol.Protocol;
+
+/**
+ * Holds the keep-alive connections of a {@link WorkerPool} while they wait
+ * for their next request, so that an idle connection does not tie up a
+ * worker. A single thread watches all of them with a selector and hands a
+ * connection back to the pool as soon as its next request starts to arrive.
+ * Connections that stay idle for longer than {@link Protocol#TIMEOUT} are
+ * closed, as a worker waiting on them would have done.
+ */
+public class IdleConnections extends Thread {
+	/**
+	 * How long a select may take, so idle connections are closed on time.
+	 */
+	private static final int SELECT_TIMEOUT = 1000;
+
+	/**
+	 * A connection waiting for its next request.
+	 */
+	private static class Parked {
+		private ConnectionHandler handler;
+		private long since;
+
+		public Parked(ConnectionHandler handler) {
+			this.handler = handler;
+			this.since = System.currentTimeMillis();
+		}
+	}
+
+	private WorkerPool pool;
+	private Selector selector;
+	private ConcurrentLinkedQueue<ConnectionHandler> arrivals;
+	private volatile boolean running;
+
+	/**
+	 * @param pool The pool to hand connections back to.
+	 * @throws IOException If the selector cannot be opened.
+	 */
+	public IdleConnections(WorkerPool pool) throws IOException {
+		super("sws-idle-connections");
+		setDaemon(true);
+		this.pool = pool;
+		this.selector = Selector.open();
+		this.arrivals = new ConcurrentLinkedQueue<ConnectionHandler>();
+		this.running = true;
+	}
+
+	/**
+	 * Takes over a connection that has answered everything it was sent.
+	 * Called by the worker, which is free again afterwards.
+	 *
+	 * @param handler The handler of the connection.
+	 */
+	public void park(ConnectionHandler handler) {
+		this.arrivals.add(handler);
+		this.selector.wakeup();
+	}
+
+	public void run() {
+		List<SelectionKey> ready = new ArrayList<SelectionKey>();
+		while (this.running) {
+			try {
+				this.selector.select(SELECT_TIMEOUT);
+				registerArrivals();
+
+				ready.clear();
+				ready.addAll(this.selector.selectedKeys());
+				this.selector.selectedKeys().clear();
+				for (SelectionKey key : ready) {
+					key.cancel();
+				}
+				// A channel only leaves the selector on the next select, and
+				// cannot be made blocking before
+				if (!ready.isEmpty())
+					this.selector.selectNow();
+				for (SelectionKey key : ready) {
+					resume((Parked) key.attachment());
+				}
+				closeIdle();
+			} catch (IOException e) {
+				e.printStackTrace();
+			}
+		}
+		for (SelectionKey key : this.selector.keys()) {
+			close(((Parked) key.attachment()).handler);
+		}
+		try {
+			this.selector.close();
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+	}
+
+	private void registerArrivals() {
+		ConnectionHandler handler;
+		while ((handler = this.arrivals.poll()) != null) {
+			SocketChannel channel = handler.getSocket().getChannel();
+			try {
+				channel.configureBlocking(false);
+				channel.register(this.selector, SelectionKey.OP_READ,
+						new Parked(handler));
+			} catch (ClosedChannelException e) {
+				// The client went away meanwhile
+			} catch (IOException e) {
+				close(handler);
+			}
+		}
+	}
+
+	private void resume(Parked parked) {
+		try {
+			parked.handler.getSocket().getChannel().configureBlocking(true);
+		} catch (IOException e) {
+			close(parked.handler);
+			return;
+		}
+		// A full pool turns the connection away with a 503, counted like a
+		// new connection it has no room for
+		this.pool.execute(parked.handler);
+	}
+
+	private void closeIdle() throws IOException {
+		long now = System.currentTimeMillis();
+		boolean closed = false;
+		for (SelectionKey key : this.selector.keys()) {
+			Parked parked = (Parked) key.attachment();
+			if (key.isValid() && now - parked.since > Protocol.TIMEOUT) {
+				key.cancel();
+				close(parked.handler);
+				closed = true;
+			}
+		}
+		if (closed)
+			this.selector.selectNow();
+	}
+
+	private static void close(ConnectionHandler handler) {
+		try {
+			handler.getSocket().close();
+		} catch (IOException e) {
+			// We are closing anyway
+		}
+	}
+
+	/**
+	 * Closes every connection still waiting and stops the thread.
+	 */
+	public void shutdown() {
+		this.running = false;
+		this.selector.wakeup();
+	}
+}
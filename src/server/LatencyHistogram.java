@@ -0,0 +1,245 @@
+/*
+ * LatencyHistogram.java
+ * Oct 17, 2026
+ *
+ * Simple Web Server (SWS) for CSSE 477
+ *
+ * Copyright (C) 2012 Chandan Raj Rupakheti
+ *
+ * This program is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation, either
+ * version 3 of the License, or any later version.
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/lgpl.html>.
+ *
+ */
+
+
+package server;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Counts how long requests took, in buckets whose width grows with the
+ * latency, the way HdrHistogram does it: every power of two is split into
+ * {@link #SUB_BUCKETS} equal buckets, so any latency is known to within
+ * about 6% however large it is. That is enough to tell a p99 of 2 ms from
+ * one of 3 ms, with a fixed, small number of counters.
+ * <p>
+ * Recording a latency increments one counter and takes no lock, so all
+ * connection threads can record into the same histogram. Reading it takes a
+ * {@link Snapshot}. Snapshots are cumulative; the difference of two gives the
+ * latencies recorded in between, so anyone who wants interval figures keeps
+ * the previous snapshot and asks {@link Snapshot#since(Snapshot)}.
+ */
+public class LatencyHistogram {
+	private static final int SUB_BUCKET_BITS = 4;
+
+	/**
+	 * The number of buckets every power of two is split into.
+	 */
+	public static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+	/**
+	 * The longest latency told apart from longer ones, about 18 minutes.
+	 * Longer latencies count as this long.
+	 */
+	public static final long MAX_NANOS = (1L << 40) - 1;
+
+	private static final int BUCKET_COUNT = bucketOf(MAX_NANOS) + 1;
+
+	/**
+	 * The counts of a histogram at one moment, or between two moments.
+	 */
+	public static class Snapshot {
+		private final long[] counts;
+		private final long count;
+		private final long totalNanos;
+		private final long maxNanos;
+
+		private Snapshot(long[] counts, long totalNanos, long maxNanos) {
+			this.counts = counts;
+			long count = 0;
+			for (long c : counts) {
+				count += c;
+			}
+			this.count = count;
+			this.totalNanos = totalNanos;
+			this.maxNanos = maxNanos;
+		}
+
+		/**
+		 * Gets the latencies recorded after an earlier snapshot was taken.
+		 * The maximum cannot be told apart and is that of the later
+		 * snapshot.
+		 *
+		 * @param earlier An earlier snapshot of the same histogram.
+		 * @return the difference between the snapshots
+		 */
+		public Snapshot since(Snapshot earlier) {
+			long[] counts = new long[this.counts.length];
+			for (int i = 0; i < counts.length; i++) {
+				counts[i] = this.counts[i] - earlier.counts[i];
+			}
+			return new Snapshot(counts, this.totalNanos - earlier.totalNanos,
+					this.maxNanos);
+		}
+
+		/**
+		 * @return the number of latencies recorded
+		 */
+		public long getCount() {
+			return this.count;
+		}
+
+		/**
+		 * @return the sum of all latencies recorded, in nanoseconds
+		 */
+		public long getTotalNanos() {
+			return this.totalNanos;
+		}
+
+		/**
+		 * @return the mean latency in nanoseconds, or 0 if none was recorded
+		 */
+		public long getMeanNanos() {
+			return this.count == 0 ? 0 : this.totalNanos / this.count;
+		}
+
+		/**
+		 * @return the longest latency recorded, in nanoseconds
+		 */
+		public long getMaxNanos() {
+			return this.maxNanos;
+		}
+
+		/**
+		 * Gets the latency that the given share of requests did not exceed.
+		 *
+		 * @param percentile e.g. 99.9 for the p999.
+		 * @return the latency in nanoseconds, the upper end of the bucket it
+		 *         fell in, or 0 if none was recorded
+		 */
+		public long getPercentileNanos(double percentile) {
+			if (this.count == 0)
+				return 0;
+			long rank = (long) Math.ceil(percentile / 100 * this.count);
+			if (rank < 1)
+				rank = 1;
+			long seen = 0;
+			for (int i = 0; i < this.counts.length; i++) {
+				seen += this.counts[i];
+				if (seen >= rank)
+					return Math.min(upperBoundOf(i), this.maxNanos);
+			}
+			return this.maxNanos;
+		}
+
+		/**
+		 * Gets the number of latencies that were at most the given one, e.g.
+		 * for a cumulative histogram with fixed bounds. The count includes
+		 * the whole bucket the bound falls in, so it is only exact for a
+		 * bound from {@link LatencyHistogram#edgeAtOrBelow(long)}.
+		 *
+		 * @param nanos The bound in nanoseconds.
+		 * @return the number of latencies up to the bound
+		 */
+		public long getCountAtOrBelow(long nanos) {
+			int last = bucketOf(Math.min(Math.max(nanos, 0), MAX_NANOS));
+			long count = 0;
+			for (int i = 0; i <= last; i++) {
+				count += this.counts[i];
+			}
+			return count;
+		}
+	}
+
+	private AtomicLongArray counts;
+	private AtomicLong totalNanos;
+	private AtomicLong maxNanos;
+
+	public LatencyHistogram() {
+		this.counts = new AtomicLongArray(BUCKET_COUNT);
+		this.totalNanos = new AtomicLong();
+		this.maxNanos = new AtomicLong();
+	}
+
+	/**
+	 * Records one latency.
+	 *
+	 * @param nanos The latency in nanoseconds.
+	 */
+	public void record(long nanos) {
+		if (nanos < 0)
+			nanos = 0;
+		else if (nanos > MAX_NANOS)
+			nanos = MAX_NANOS;
+		this.counts.incrementAndGet(bucketOf(nanos));
+		this.totalNanos.addAndGet(nanos);
+		// Most latencies are not a new maximum, those only read
+		long max = this.maxNanos.get();
+		while (nanos > max && !this.maxNanos.compareAndSet(max, nanos)) {
+			max = this.maxNanos.get();
+		}
+	}
+
+	/**
+	 * Copies the counts. Latencies recorded meanwhile may or may not be
+	 * included, but every count is one that was actually reached.
+	 *
+	 * @return the snapshot
+	 */
+	public Snapshot snapshot() {
+		long[] counts = new long[BUCKET_COUNT];
+		for (int i = 0; i < counts.length; i++) {
+			counts[i] = this.counts.get(i);
+		}
+		return new Snapshot(counts, this.totalNanos.get(), this.maxNanos.get());
+	}
+
+	/**
+	 * Gets the longest latency at or below the given one that ends a bucket.
+	 * Counting up to it counts exactly the latencies up to it, so it makes a
+	 * bound for a cumulative histogram that does not over-report.
+	 *
+	 * @param nanos A latency in nanoseconds.
+	 * @return the end of the last bucket that ends at or below it
+	 */
+	public static long edgeAtOrBelow(long nanos) {
+		nanos = Math.min(Math.max(nanos, 0), MAX_NANOS);
+		int bucket = bucketOf(nanos);
+		if (upperBoundOf(bucket) == nanos || bucket == 0)
+			return upperBoundOf(bucket);
+		return upperBoundOf(bucket - 1);
+	}
+
+	/**
+	 * Finds the bucket of a latency. Latencies below {@link #SUB_BUCKETS}
+	 * have a bucket each; above that, the bucket is the power of two and the
+	 * next {@link #SUB_BUCKET_BITS} bits below the highest one.
+	 */
+	static int bucketOf(long nanos) {
+		if (nanos < SUB_BUCKETS)
+			return (int) nanos;
+		int shift = 63 - Long.numberOfLeadingZeros(nanos) - SUB_BUCKET_BITS;
+		return ((shift + 1) << SUB_BUCKET_BITS)
+				+ (int) ((nanos >>> shift) & (SUB_BUCKETS - 1));
+	}
+
+	/**
+	 * @return the largest latency that falls in the bucket
+	 */
+	static long upperBoundOf(int bucket) {
+		if (bucket < SUB_BUCKETS)
+			return bucket;
+		int shift = (bucket >>> SUB_BUCKET_BITS) - 1;
+		long mantissa = SUB_BUCKETS + (bucket & (SUB_BUCKETS - 1));
+		return ((mantissa + 1) << shift) - 1;
+	}
+}
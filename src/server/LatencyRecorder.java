@@ -0,0 +1,182 @@
+/*
+ * LatencyRecorder.java
+ * Oct 17, 2026
+ *
+ * Simple Web Server (SWS) for CSSE 477
+ *
+ * Copyright (C) 2012 Chandan Raj Rupakheti
+ *
+ * This program is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation, either
+ * version 3 of the License, or any later version.
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/lgpl.html>.
+ *
+ */
+
+
+package server;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import protocol.HttpRequest;
+import protocol.HttpResponse;
+import protocol.Protocol;
+
+/**
+ * Records how long the server took to answer each request, in
+ * {@link LatencyHistogram}s: one for all requests, and one per status code,
+ * per cache hit or miss, and per route. The breakdowns are kept separately,
+ * not for every combination, so their number stays small.
+ * <p>
+ * The latency of a request runs from the moment its head has been parsed to
+ * the moment its response is ready to be written. Time spent waiting for a
+ * slow client to take the bytes is not counted.
+ * <p>
+ * A route is the first directory of the path the URI names once
+ * <tt>.</tt> and <tt>..</tt> are resolved, e.g. <tt>/images</tt> for
+ * <tt>/images/logo.png</tt>, or <tt>/</tt> for files in the root directory.
+ * Only requests that were answered with a file open a new route, and there
+ * are at most {@link #MAX_ROUTES}; everything else counts towards
+ * {@link #OTHER_ROUTE}. Clients cannot make up routes by asking for files
+ * that do not exist, or by passing through directories that do not.
+ */
+public class LatencyRecorder {
+	/**
+	 * The most routes to keep histograms for.
+	 */
+	public static final int MAX_ROUTES = 64;
+
+	/**
+	 * The route of requests that fit no other.
+	 */
+	public static final String OTHER_ROUTE = "other";
+
+	private LatencyHistogram all;
+	private LatencyHistogram hits;
+	private LatencyHistogram misses;
+	private ConcurrentHashMap<Integer, LatencyHistogram> statuses;
+	private ConcurrentHashMap<String, LatencyHistogram> routes;
+	private LatencyHistogram otherRoute;
+
+	public LatencyRecorder() {
+		this.all = new LatencyHistogram();
+		this.hits = new LatencyHistogram();
+		this.misses = new LatencyHistogram();
+		this.statuses = new ConcurrentHashMap<Integer, LatencyHistogram>();
+		this.routes = new ConcurrentHashMap<String, LatencyHistogram>();
+		this.otherRoute = new LatencyHistogram();
+		this.routes.put(OTHER_ROUTE, this.otherRoute);
+	}
+
+	/**
+	 * Records the latency of a request.
+	 *
+	 * @param request The request, which must still be valid.
+	 * @param response The response to it.
+	 * @param nanos How long it took to answer, in nanoseconds.
+	 */
+	public void record(HttpRequest request, HttpResponse response, long nanos) {
+		this.all.record(nanos);
+
+		Integer status = response.getStatus();
+		LatencyHistogram byStatus = this.statuses.get(status);
+		if (byStatus == null)
+			byStatus = add(this.statuses, status);
+		byStatus.record(nanos);
+
+		Boolean cacheHit = response.getCacheHit();
+		if (cacheHit != null)
+			(cacheHit ? this.hits : this.misses).record(nanos);
+
+		String route = routeOf(request.getUri());
+		LatencyHistogram byRoute = this.routes.get(route);
+		if (byRoute == null) {
+			if (isServed(response.getStatus())
+					&& this.routes.size() <= MAX_ROUTES)
+				byRoute = add(this.routes, route);
+			else
+				byRoute = this.otherRoute;
+		}
+		byRoute.record(nanos);
+	}
+
+	private static <K> LatencyHistogram add(
+			ConcurrentHashMap<K, LatencyHistogram> histograms, K key) {
+		LatencyHistogram histogram = new LatencyHistogram();
+		LatencyHistogram existing = histograms.putIfAbsent(key, histogram);
+		return existing != null ? existing : histogram;
+	}
+
+	/**
+	 * Checks whether a response with this status code means the request
+	 * named a file that was served.
+	 */
+	private static boolean isServed(int status) {
+		return status == Protocol.OK_CODE
+				|| status == Protocol.PARTIAL_CONTENT_CODE
+				|| status == Protocol.NOT_MODIFIED_CODE;
+	}
+
+	/**
+	 * Gets the route of a URI: the first directory of the path it names, or
+	 * <tt>/</tt> for a file in the root directory.
+	 *
+	 * @param uri The URI of the request.
+	 * @return the route
+	 */
+	public static String routeOf(String uri) {
+		uri = PathResolver.pathOf(uri);
+		int end = uri.length();
+		int start = 0;
+		while (start < end && uri.charAt(start) == '/')
+			start++;
+		int slash = uri.indexOf('/', start);
+		if (slash < 0 || slash >= end)
+			return "/";
+		return "/" + uri.substring(start, slash);
+	}
+
+	/**
+	 * @return the latencies of all requests
+	 */
+	public LatencyHistogram getAll() {
+		return this.all;
+	}
+
+	/**
+	 * @return the latencies of requests for files that were in the cache
+	 */
+	public LatencyHistogram getCacheHits() {
+		return this.hits;
+	}
+
+	/**
+	 * @return the latencies of requests for files that had to be read into
+	 *         the cache
+	 */
+	public LatencyHistogram getCacheMisses() {
+		return this.misses;
+	}
+
+	/**
+	 * @return the latencies by the status code of the response
+	 */
+	public Map<Integer, LatencyHistogram> getByStatus() {
+		return Collections.unmodifiableMap(this.statuses);
+	}
+
+	/**
+	 * @return the latencies by route, including {@link #OTHER_ROUTE}
+	 */
+	public Map<String, LatencyHistogram> getByRoute() {
+		return Collections.unmodifiableMap(this.routes);
+	}
+}
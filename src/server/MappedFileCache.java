@@ -0,0 +1,217 @@
+/*
+ * MappedFileCache.java
+ * Oct 17, 2026
+ *
+ * Simple Web Server (SWS) for CSSE 477
+ *
+ * Copyright (C) 2012 Chandan Raj Rupakheti
+ *
+ * This program is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation, either
+ * version 3 of the License, or any later version.
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/lgpl.html>.
+ *
+ */
+
+package server;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The second tier of the {@link ServerCache}, for files too large to keep on
+ * the heap. Files are memory-mapped read-only, so their contents live in the
+ * operating system's page cache instead of the Java heap and cost the garbage
+ * collector nothing. A mapped buffer is written to a socket channel directly,
+ * without being copied onto the heap first.
+ * <p>
+ * The tier has its own byte budget and evicts the least recently used file
+ * when it is full. Java cannot unmap a file explicitly, so an evicted mapping
+ * is released once the garbage collector finds its buffer unreachable.
+ * <p>
+ * Lookups take no lock, they only stamp the mapping with the time of use.
+ * Mapping a new file and evicting old ones is synchronized. There are few
+ * large files, so eviction simply looks for the oldest stamp.
+ */
+public class MappedFileCache {
+	private static class Mapping {
+		private final MappedByteBuffer buffer;
+		private volatile long lastUsed;
+
+		public Mapping(MappedByteBuffer buffer) {
+			this.buffer = buffer;
+			this.lastUsed = System.nanoTime();
+		}
+	}
+
+	private long maxBytes;
+	private volatile long size;
+	// Counts reported changes, only ever changed under the lock
+	private volatile long changes;
+	private ConcurrentHashMap<String, Mapping> cache;
+
+	private LongAdder hits;
+	private LongAdder misses;
+
+	/**
+	 * @param maxBytes The most bytes of files to keep mapped.
+	 */
+	public MappedFileCache(long maxBytes) {
+		this.maxBytes = maxBytes;
+		this.cache = new ConcurrentHashMap<String, Mapping>();
+		this.hits = new LongAdder();
+		this.misses = new LongAdder();
+	}
+
+	/**
+	 * Gets the contents of the file as a read-only buffer outside the heap.
+	 *
+	 * @param file The file to read.
+	 * @return The file contents, or <tt>null</tt> if the file does not fit in
+	 *         this tier or cannot be mapped.
+	 */
+	public ByteBuffer get(File file) {
+		String path = FileWatcher.pathOf(file);
+		Mapping mapping = this.cache.get(path);
+		if (mapping != null) {
+			this.hits.increment();
+			mapping.lastUsed = System.nanoTime();
+			return mapping.buffer.asReadOnlyBuffer();
+		}
+		this.misses.increment();
+
+		// A change reported while the file is being mapped may or may not be
+		// in what was mapped
+		long changes = this.changes;
+		long length = file.length();
+		if (length > this.maxBytes || length > Integer.MAX_VALUE)
+			return null;
+		MappedByteBuffer buffer;
+		try {
+			FileChannel channel = FileChannel.open(file.toPath(),
+					StandardOpenOption.READ);
+			try {
+				buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, length);
+			} finally {
+				// The mapping stays valid after the channel is closed
+				channel.close();
+			}
+		} catch (IOException e) {
+			e.printStackTrace();
+			return null;
+		}
+
+		synchronized (this) {
+			// Another thread may have mapped the same file meanwhile, and a
+			// mapping of a file that changed meanwhile must not be kept
+			if (this.changes == changes && !this.cache.containsKey(path)) {
+				while (this.size + length > this.maxBytes) {
+					if (!evictOldest())
+						break;
+				}
+				this.cache.put(path, new Mapping(buffer));
+				this.size += length;
+			}
+		}
+		return buffer.asReadOnlyBuffer();
+	}
+
+	/**
+	 * Drops the mapping that was used least recently. The caller holds the
+	 * lock.
+	 *
+	 * @return <tt>false</tt> if there was nothing to drop
+	 */
+	private boolean evictOldest() {
+		String oldest = null;
+		long oldestUse = Long.MAX_VALUE;
+		for (Map.Entry<String, Mapping> entry : this.cache.entrySet()) {
+			if (oldest == null || entry.getValue().lastUsed - oldestUse < 0) {
+				oldest = entry.getKey();
+				oldestUse = entry.getValue().lastUsed;
+			}
+		}
+		if (oldest == null)
+			return false;
+		this.size -= this.cache.remove(oldest).buffer.capacity();
+		return true;
+	}
+
+	/**
+	 * Drops the mapping of a file that changed, or of every file below a
+	 * directory that is gone. Reading a mapping of a file that was truncated
+	 * meanwhile would fail, so this has to happen before the file is served
+	 * again.
+	 *
+	 * @param path The absolute path of the file.
+	 */
+	public synchronized void fileChanged(String path) {
+		this.changes++;
+		Mapping mapping = this.cache.remove(path);
+		if (mapping != null)
+			this.size -= mapping.buffer.capacity();
+		if (!new File(path).exists()) {
+			String prefix = path + File.separator;
+			Iterator<Map.Entry<String, Mapping>> i = this.cache.entrySet()
+					.iterator();
+			while (i.hasNext()) {
+				Map.Entry<String, Mapping> entry = i.next();
+				if (entry.getKey().startsWith(prefix)) {
+					this.size -= entry.getValue().buffer.capacity();
+					i.remove();
+				}
+			}
+		}
+	}
+
+	/**
+	 * Drops every mapping.
+	 */
+	public synchronized void allFilesChanged() {
+		this.changes++;
+		this.cache.clear();
+		this.size = 0;
+	}
+
+	/**
+	 * @return the most bytes of files this tier keeps mapped
+	 */
+	public long getMaxBytes() {
+		return this.maxBytes;
+	}
+
+	/**
+	 * @return the bytes of files mapped right now
+	 */
+	public long getSize() {
+		return this.size;
+	}
+
+	/**
+	 * @return the number of requests served from a mapping
+	 */
+	public long getHitCount() {
+		return this.hits.sum();
+	}
+
+	/**
+	 * @return the number of requests that had to map the file first
+	 */
+	public long getMissCount() {
+		return this.misses.sum();
+	}
+}
@@ -0,0 +1,322 @@
+/*
+ * NioConnection.java
+ * Oct 17, 2026
+ *
+ * Simple Web Server (SWS) for CSSE 477
+ *
+ * Copyright (C) 2012 Chandan Raj Rupakheti
+ *
+ * This program is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation, either
+ * version 3 of the License, or any later version.
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/lgpl.html>.
+ *
+ */
+
+package server;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.Executor;
+
+import protocol.HttpRequest;
+import protocol.HttpRequestParser;
+import protocol.HttpResponse;
+import protocol.HttpResponseFactory;
+import protocol.Protocol;
+import protocol.ProtocolException;
+
+/**
+ * The state of a single non-blocking connection owned by an
+ * {@link EventLoop} selector thread. Incoming bytes are fed to a
+ * {@link HttpRequestParser} as they arrive, and once a request head is
+ * complete the response is queued in an
+ * {@link OutboundQueue} and then written out as fast as the client accepts it.
+ * A request that cannot be answered from memory is answered by a worker
+ * thread, and the connection waits for it without reading further.
+ */
+class NioConnection {
+	/**
+	 * The most responses to pipelined requests that are written together.
+	 */
+	private static final int MAX_PIPELINED = 16;
+
+	private Server server;
+	private ServerCache serverCache;
+	private RequestProcessor processor;
+	private SocketChannel channel;
+	private SelectionKey key;
+	private Executor workers;
+	private Executor loop;
+
+	private ByteBuffer in;
+	private HttpRequestParser parser;
+	private OutboundQueue out;
+	private boolean closeAfterWrite;
+	private boolean closed;
+	private boolean waiting;
+
+	private long lastActive;
+	private int answered;
+
+	/**
+	 * @param workers The threads that answer requests which need the file
+	 *            system.
+	 * @param loop Runs tasks on the selector thread that owns the key.
+	 */
+	public NioConnection(Server server, ServerCache serverCache,
+			RequestProcessor processor, SocketChannel channel,
+			SelectionKey key, Executor workers, Executor loop) {
+		this.server = server;
+		this.serverCache = serverCache;
+		this.processor = processor;
+		this.channel = channel;
+		this.key = key;
+		this.workers = workers;
+		this.loop = loop;
+		this.in = ByteBuffer.allocate(Protocol.CHUNK_LENGTH);
+		this.parser = new HttpRequestParser();
+		this.out = new OutboundQueue(server.getCounters());
+		this.lastActive = System.currentTimeMillis();
+	}
+
+	/**
+	 * Called when the channel is readable.
+	 */
+	public void read() throws IOException {
+		int bytesRead = this.channel.read(this.in);
+		if (bytesRead == -1) {
+			// Same as the blocking handler, a request cut off is a bad request
+			if (this.parser.hasPartialRequest() && this.out.isEmpty())
+				send(HttpResponseFactory.create400BadRequest(Protocol.CLOSE));
+			else
+				close();
+			return;
+		}
+		this.lastActive = System.currentTimeMillis();
+		processBuffered();
+	}
+
+	/**
+	 * Called when the channel is writable again after a partial write.
+	 */
+	public void write() throws IOException {
+		if (flush())
+			processBuffered();
+	}
+
+	/**
+	 * Answers every complete request that is sitting in the input buffer.
+	 * Responses to pipelined requests are queued and written together, and
+	 * no more requests are taken while a previous batch is still being
+	 * written, or while a worker answers a request.
+	 */
+	private void processBuffered() throws IOException {
+		while (!this.closed && !this.waiting && this.out.isEmpty()) {
+			int queued = 0;
+			while (!this.closeAfterWrite && !this.waiting
+					&& queued < MAX_PIPELINED) {
+				HttpRequest request = null;
+				HttpResponse response;
+				long requestStart = 0;
+				this.in.flip();
+				try {
+					request = this.parser.parse(this.in);
+					if (request == null)
+						break;
+					if (this.server.DOSCheck(this.channel.socket())) {
+						close();
+						return;
+					}
+					requestStart = System.nanoTime();
+					response = this.processor.process(request, true);
+					if (response == null) {
+						answerLater(request, requestStart);
+						break;
+					}
+				} catch (ProtocolException pe) {
+					response = HttpResponseFactory
+							.create400BadRequest(Protocol.CLOSE);
+				} catch (Exception e) {
+					e.printStackTrace();
+					response = HttpResponseFactory
+							.create400BadRequest(Protocol.CLOSE);
+				} finally {
+					this.in.compact();
+				}
+
+				if (!queue(response))
+					return;
+				// Requests that could not be parsed have no latency to speak of
+				if (request != null)
+					this.server.requestAnswered(
+							this.channel.socket().getInetAddress(), request,
+							response, System.nanoTime() - requestStart,
+							this.answered++ > 0);
+				queued++;
+			}
+			if (queued == 0 || !flush())
+				return;
+		}
+	}
+
+	/**
+	 * Has a worker answer the request. Responses to the requests before it
+	 * are still written meanwhile.
+	 */
+	private void answerLater(final HttpRequest request,
+			final long requestStart) {
+		this.waiting = true;
+		if (this.out.isEmpty())
+			this.key.interestOps(0);
+		this.workers.execute(new Runnable() {
+			public void run() {
+				HttpResponse response = processor.process(request);
+				// Opening or mapping the file is done here as well
+				final OutboundQueue ready = new OutboundQueue();
+				boolean added;
+				try {
+					ready.add(response, serverCache);
+					added = true;
+				} catch (IOException e) {
+					e.printStackTrace();
+					added = false;
+				}
+				final HttpResponse answer = response;
+				final boolean failed = !added;
+				loop.execute(new Runnable() {
+					public void run() {
+						answered(request, answer, ready, requestStart, failed);
+					}
+				});
+			}
+		});
+	}
+
+	/**
+	 * Sends the response a worker got ready and goes on with the requests
+	 * that came after it. Runs on the selector thread.
+	 */
+	private void answered(HttpRequest request, HttpResponse response,
+			OutboundQueue ready, long requestStart, boolean failed) {
+		if (this.closed) {
+			ready.clear();
+			return;
+		}
+		this.waiting = false;
+		this.lastActive = System.currentTimeMillis();
+		if (failed) {
+			close();
+			return;
+		}
+		this.out.addAll(ready);
+		if (!RequestProcessor.isPersistent(response))
+			this.closeAfterWrite = true;
+		this.server.requestAnswered(this.channel.socket().getInetAddress(),
+				request, response, System.nanoTime() - requestStart,
+				this.answered++ > 0);
+		try {
+			if (flush())
+				processBuffered();
+		} catch (Exception e) {
+			// The client went away
+			close();
+		}
+	}
+
+	/**
+	 * Queues the response and starts writing it.
+	 *
+	 * @return <tt>true</tt> if the whole response was written
+	 */
+	private boolean send(HttpResponse response) throws IOException {
+		return queue(response) && flush();
+	}
+
+	/**
+	 * Queues the response behind the ones already waiting.
+	 *
+	 * @return <tt>false</tt> if the connection had to be closed
+	 */
+	private boolean queue(HttpResponse response) {
+		try {
+			this.out.add(response, this.serverCache);
+		} catch (IOException e) {
+			e.printStackTrace();
+			close();
+			return false;
+		}
+		if (!RequestProcessor.isPersistent(response))
+			this.closeAfterWrite = true;
+		return true;
+	}
+
+	/**
+	 * Writes as much of the pending response as the channel takes.
+	 *
+	 * @return <tt>true</tt> if nothing is left to write
+	 */
+	private boolean flush() throws IOException {
+		boolean done = this.out.flush(this.channel);
+		this.lastActive = System.currentTimeMillis();
+		if (!done) {
+			this.key.interestOps(SelectionKey.OP_WRITE);
+			return false;
+		}
+		if (this.closeAfterWrite) {
+			close();
+			return false;
+		}
+		this.key.interestOps(this.waiting ? 0 : SelectionKey.OP_READ);
+		return true;
+	}
+
+	/**
+	 * Checks whether the connection has seen no traffic for longer than
+	 * {@link Protocol#TIMEOUT}.
+	 */
+	public boolean isIdle(long now) {
+		return !this.closed && !this.waiting
+				&& now - this.lastActive > Protocol.TIMEOUT;
+	}
+
+	/**
+	 * Closes an idle connection. A client that stopped in the middle of a
+	 * request gets a 408 first, as in the blocking handler.
+	 */
+	public void expire() {
+		if (this.out.isEmpty()
+				&& (this.parser.hasPartialRequest() || this.in.position() > 0)) {
+			try {
+				send(HttpResponseFactory.create408RequestTimeout(Protocol.CLOSE));
+			} catch (IOException e) {
+				// We are closing anyway
+			}
+		}
+		close();
+	}
+
+	/**
+	 * Closes the connection.
+	 */
+	public void close() {
+		if (this.closed)
+			return;
+		this.closed = true;
+		this.key.cancel();
+		this.out.clear();
+		try {
+			this.channel.close();
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+	}
+}
@@ -0,0 +1,277 @@
+/*
+ * OutboundQueue.java
+ * Oct 17, 2026
+ *
+ * Simple Web Server (SWS) for CSSE 477
+ *
+ * Copyright (C) 2012 Chandan Raj Rupakheti
+ *
+ * This program is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation, either
+ * version 3 of the License, or any later version.
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/lgpl.html>.
+ *
+ */
+
+package server;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.GatheringByteChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.List;
+
+import protocol.ByteRange;
+import protocol.HttpResponse;
+import protocol.Protocol;
+
+/**
+ * The bytes that still have to be written to a connection, kept as a queue
+ * of buffers and file regions so that nothing is copied on the way out.
+ * Neighbouring buffers, e.g. a response head and a cached body, go out in a
+ * single gathering write. File regions are sent with
+ * {@link FileChannel#transferTo(long, long, java.nio.channels.WritableByteChannel)},
+ * which the operating system can turn into a sendfile.
+ * <p>
+ * The same queue works for blocking and non-blocking channels.
+ */
+public class OutboundQueue {
+	/**
+	 * The most buffers handed to a single gathering write.
+	 */
+	private static final int MAX_GATHER = 16;
+
+	/**
+	 * A part of a file that still has to be sent.
+	 */
+	private static class FileRegion {
+		private FileChannel channel;
+		private long position;
+		private long end;
+		private boolean closeWhenSent;
+
+		public FileRegion(FileChannel channel, long position, long end,
+				boolean closeWhenSent) {
+			this.channel = channel;
+			this.position = position;
+			this.end = end;
+			this.closeWhenSent = closeWhenSent;
+		}
+	}
+
+	private ArrayDeque<Object> segments;
+	private ByteBuffer[] gather;
+	private ServerCounters counters;
+
+	public OutboundQueue() {
+		this(null);
+	}
+
+	/**
+	 * @param counters The counters to add the bytes written to, or
+	 *            <tt>null</tt> not to count them.
+	 */
+	public OutboundQueue(ServerCounters counters) {
+		this.segments = new ArrayDeque<Object>();
+		this.gather = new ByteBuffer[MAX_GATHER];
+		this.counters = counters;
+	}
+
+	/**
+	 * Queues the head and, for a 200 OK, the body of the response. A body the
+	 * response already holds is queued as it is, or just the requested ranges
+	 * of it for a 206 Partial Content. Otherwise bodies of cached
+	 * files are taken straight from the {@link ServerCache}, other files are
+	 * queued as a region of the file.
+	 *
+	 * @param response The response to send.
+	 * @param cache The cache to take file contents from.
+	 * @throws IOException If the file cannot be opened.
+	 */
+	public void add(HttpResponse response, ServerCache cache)
+			throws IOException {
+		if (response.getRanges() != null) {
+			addRanges(response);
+			return;
+		}
+
+		// A body that is already in memory belongs to the head it came with
+		if (response.getBody() != null) {
+			for (ByteBuffer head : response.getHeadBuffers()) {
+				this.segments.add(head);
+			}
+			this.segments.add(response.getBody());
+			return;
+		}
+
+		File file = response.getFile();
+		if (response.getStatus() != Protocol.OK_CODE || file == null) {
+			this.segments.add(response.getHeadBuffer());
+			return;
+		}
+
+		// Take the length from the bytes we are actually about to send, the
+		// file may have changed since the response was created
+		Object body;
+		long length;
+		ByteBuffer buffer = cache.getBuffer(file);
+		if (buffer != null) {
+			body = buffer;
+			length = buffer.remaining();
+		} else {
+			FileChannel channel = FileChannel.open(file.toPath(),
+					StandardOpenOption.READ);
+			length = channel.size();
+			body = new FileRegion(channel, 0, length, true);
+		}
+		if (!Long.toString(length).equals(
+				response.getHeader().get(Protocol.CONTENT_LENGTH)))
+			response.put(Protocol.CONTENT_LENGTH, Long.toString(length));
+
+		this.segments.add(response.getHeadBuffer());
+		this.segments.add(body);
+	}
+
+	/**
+	 * Queues the head and the ranges of a 206 Partial Content response, each
+	 * range as a slice of the body in memory or as a region of the file.
+	 */
+	private void addRanges(HttpResponse response) throws IOException {
+		List<ByteRange> ranges = response.getRanges();
+		ByteBuffer whole = response.getBody();
+		FileChannel channel = null;
+		if (whole == null)
+			channel = FileChannel.open(response.getFile().toPath(),
+					StandardOpenOption.READ);
+
+		this.segments.add(response.getHeadBuffer());
+		for (int i = 0; i < ranges.size(); i++) {
+			ByteRange range = ranges.get(i);
+			ByteBuffer partHead = response.getPartHead(i);
+			if (partHead != null)
+				this.segments.add(partHead);
+			if (whole != null)
+				this.segments.add(range.slice(whole));
+			else
+				// The regions share the channel, the last one closes it
+				this.segments.add(new FileRegion(channel, range.getStart(),
+						range.getEnd() + 1, i == ranges.size() - 1));
+		}
+		ByteBuffer end = response.getPartHead(ranges.size());
+		if (end != null)
+			this.segments.add(end);
+	}
+
+	/**
+	 * Queues a buffer as it is.
+	 *
+	 * @param buffer The bytes to send.
+	 */
+	public void add(ByteBuffer buffer) {
+		this.segments.add(buffer);
+	}
+
+	/**
+	 * Moves everything queued in another queue behind what is queued here,
+	 * e.g. a response another thread got ready.
+	 *
+	 * @param other The queue to empty.
+	 */
+	public void addAll(OutboundQueue other) {
+		this.segments.addAll(other.segments);
+		other.segments.clear();
+	}
+
+	/**
+	 * Checks whether everything has been written.
+	 *
+	 * @return <tt>true</tt> if nothing is queued
+	 */
+	public boolean isEmpty() {
+		return this.segments.isEmpty();
+	}
+
+	/**
+	 * Writes as much as the channel accepts. A blocking channel always takes
+	 * everything.
+	 *
+	 * @param channel The channel of the connection.
+	 * @return <tt>true</tt> if the queue is empty afterwards
+	 * @throws IOException If writing fails.
+	 */
+	public boolean flush(GatheringByteChannel channel) throws IOException {
+		while (!this.segments.isEmpty()) {
+			Object first = this.segments.peek();
+			if (first instanceof FileRegion) {
+				FileRegion region = (FileRegion) first;
+				long sent = region.channel.transferTo(region.position,
+						region.end - region.position, channel);
+				region.position += sent;
+				count(sent);
+				if (region.position >= region.end) {
+					if (region.closeWhenSent)
+						region.channel.close();
+					this.segments.poll();
+				} else if (sent == 0) {
+					if (region.position >= region.channel.size())
+						throw new IOException("File shrank while sending it");
+					return false;
+				}
+				continue;
+			}
+
+			// Gather the buffers at the front of the queue into one write
+			int count = 0;
+			for (Object segment : this.segments) {
+				if (!(segment instanceof ByteBuffer) || count == MAX_GATHER)
+					break;
+				this.gather[count++] = (ByteBuffer) segment;
+			}
+			long written = channel.write(this.gather, 0, count);
+			Arrays.fill(this.gather, 0, count, null);
+			count(written);
+
+			int finished = 0;
+			while (!this.segments.isEmpty()
+					&& this.segments.peek() instanceof ByteBuffer
+					&& !((ByteBuffer) this.segments.peek()).hasRemaining()) {
+				this.segments.poll();
+				finished++;
+			}
+			if (written == 0 && finished == 0)
+				return false;
+		}
+		return true;
+	}
+
+	private void count(long bytes) {
+		if (this.counters != null && bytes > 0)
+			this.counters.bytesSent(bytes);
+	}
+
+	/**
+	 * Drops everything that is still queued and closes the files.
+	 */
+	public void clear() {
+		for (Object segment : this.segments) {
+			if (segment instanceof FileRegion) {
+				try {
+					((FileRegion) segment).channel.close();
+				} catch (IOException e) {
+					e.printStackTrace();
+				}
+			}
+		}
+		this.segments.clear();
+	}
+}
@@ -0,0 +1,387 @@
+/*
+ * PathResolver.java
+ * Oct 17, 2026
+ *
+ * Simple Web Server (SWS) for CSSE 477
+ *
+ * Copyright (C) 2012 Chandan Raj Rupakheti
+ *
+ * This program is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation, either
+ * version 3 of the License, or any later version.
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/lgpl.html>.
+ *
+ */
+
+
+package server;
+
+import java.io.File;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+import protocol.Protocol;
+
+/**
+ * Maps request URIs to the files they name. Finding the file takes several
+ * calls into the file system: whether it exists, whether it is a directory,
+ * whether that has an index file, and its length and modification time.
+ * On top of that the path has to be checked against the {@link AccessRules}.
+ * The resolver does this once per URI and keeps the answer as an immutable
+ * {@link ResolvedPath}, so that a request for a known URI makes no system
+ * calls at all. Answers that nothing was found are kept too.
+ * <p>
+ * The {@link FileWatcher} tells the resolver about every change below the
+ * root directory, and every answer that depends on the changed file or
+ * directory is dropped. A lookup that raced with a change is not kept.
+ * New access rules replace the old ones in one step and drop every answer.
+ * <p>
+ * The query is not part of the key, and <tt>.</tt>, <tt>..</tt> and
+ * repeated slashes are resolved first, so clients cannot make up new keys
+ * for the same file. The number of entries is still limited. When the limit
+ * is reached, the least recently used of a few entries picked at random is
+ * dropped. That is close enough to LRU for this purpose, and a lookup only
+ * has to stamp the entry it found, without taking a lock. To pick entries at
+ * random, the entries are also kept in a table without gaps; adding and
+ * dropping entries takes a lock, but that only happens when the file system
+ * had to be asked anyway.
+ */
+public class PathResolver implements FileChangeListener {
+	/**
+	 * The most paths to remember.
+	 */
+	public static final int MAX_PATHS = 10000;
+
+	/**
+	 * The number of entries to choose the one to drop from.
+	 */
+	private static final int EVICTION_SAMPLE = 8;
+
+	/**
+	 * What a path resolved to, and when it was last asked for.
+	 */
+	private static class CachedPath {
+		private final String path;
+		private final ResolvedPath resolved;
+		private volatile long lastUsed;
+		// Where the entry is in the table, only used under the lock
+		private int index;
+
+		public CachedPath(String path, ResolvedPath resolved) {
+			this.path = path;
+			this.resolved = resolved;
+			this.lastUsed = System.nanoTime();
+		}
+	}
+
+	private String rootDirectory;
+	private String rootPath;
+	private volatile AccessRules accessRules;
+	private ConcurrentHashMap<String, CachedPath> paths;
+
+	// The entries of the map without gaps, to pick from at random. Both only
+	// change under the lock.
+	private CachedPath[] table;
+	private int tableSize;
+	private ReentrantLock lock;
+
+	// Counts changes, so a lookup can tell whether one happened meanwhile
+	private AtomicLong changes;
+
+	private LongAdder hits;
+	private LongAdder misses;
+
+	/**
+	 * @param rootDirectory The directory URIs are relative to.
+	 * @param accessRules The rules for what may be served.
+	 */
+	public PathResolver(String rootDirectory, AccessRules accessRules) {
+		this.rootDirectory = rootDirectory;
+		this.rootPath = normalize(new File(rootDirectory));
+		this.accessRules = accessRules;
+		this.paths = new ConcurrentHashMap<String, CachedPath>();
+		this.table = new CachedPath[MAX_PATHS];
+		this.lock = new ReentrantLock();
+		this.changes = new AtomicLong();
+		this.hits = new LongAdder();
+		this.misses = new LongAdder();
+	}
+
+	/**
+	 * Finds the file a URI names.
+	 *
+	 * @param uri The URI of the request.
+	 * @return what the URI resolves to, never <tt>null</tt>
+	 */
+	public ResolvedPath resolve(String uri) {
+		String path = pathOf(uri);
+		CachedPath cached = this.paths.get(path);
+		if (cached != null) {
+			this.hits.increment();
+			cached.lastUsed = System.nanoTime();
+			return cached.resolved;
+		}
+		this.misses.increment();
+
+		long changes = this.changes.get();
+		cached = new CachedPath(path, lookUp(path));
+		this.lock.lock();
+		try {
+			// A file may have changed after we looked at it but before the
+			// answer was in the map, where the change could not find it
+			if (this.changes.get() == changes) {
+				// Another request may have looked the path up meanwhile
+				CachedPath other = this.paths.get(path);
+				if (other != null)
+					remove(other);
+				if (this.tableSize >= MAX_PATHS)
+					evictOne();
+				add(cached);
+			}
+		} finally {
+			this.lock.unlock();
+		}
+		return cached.resolved;
+	}
+
+	/**
+	 * Finds the file a URI names if that is already known, without asking
+	 * the file system.
+	 *
+	 * @param uri The URI of the request.
+	 * @return what the URI resolves to, or <tt>null</tt> if it has to be
+	 *         looked up with {@link #resolve(String)}
+	 */
+	public ResolvedPath resolveIfPresent(String uri) {
+		CachedPath cached = this.paths.get(pathOf(uri));
+		if (cached == null)
+			return null;
+		this.hits.increment();
+		cached.lastUsed = System.nanoTime();
+		return cached.resolved;
+	}
+
+	/**
+	 * Gets the part of a URI that names a file: without the query, and with
+	 * <tt>.</tt>, <tt>..</tt> and repeated slashes resolved. A path that
+	 * climbs above the root is left as it is, it is forbidden anyway.
+	 *
+	 * @param uri The URI of a request.
+	 * @return the path
+	 */
+	static String pathOf(String uri) {
+		int end = uri.length();
+		for (int i = 0; i < end; i++) {
+			char c = uri.charAt(i);
+			if (c == '?' || c == '#')
+				end = i;
+		}
+		String path = uri.substring(0, end);
+		if (!path.startsWith("/")
+				|| (path.indexOf("//") < 0 && path.indexOf("/.") < 0))
+			return path;
+
+		List<String> segments = new ArrayList<String>();
+		for (String segment : path.split("/")) {
+			if (segment.isEmpty() || segment.equals("."))
+				continue;
+			if (segment.equals("..")) {
+				if (segments.isEmpty())
+					return path;
+				segments.remove(segments.size() - 1);
+			} else {
+				segments.add(segment);
+			}
+		}
+		StringBuilder normalized = new StringBuilder(path.length());
+		for (String segment : segments) {
+			normalized.append('/').append(segment);
+		}
+		// A directory asked for with a trailing slash keeps it
+		if (normalized.length() == 0 || path.endsWith("/")
+				|| path.endsWith("/.") || path.endsWith("/.."))
+			normalized.append('/');
+		return normalized.toString();
+	}
+
+	/**
+	 * Adds an entry to the map and the table. The caller holds the lock.
+	 */
+	private void add(CachedPath cached) {
+		this.paths.put(cached.path, cached);
+		cached.index = this.tableSize;
+		this.table[this.tableSize++] = cached;
+	}
+
+	/**
+	 * Drops an entry, moving the last one in the table into its place. The
+	 * caller holds the lock.
+	 */
+	private void remove(CachedPath cached) {
+		if (!this.paths.remove(cached.path, cached))
+			return;
+		CachedPath last = this.table[--this.tableSize];
+		this.table[cached.index] = last;
+		last.index = cached.index;
+		this.table[this.tableSize] = null;
+	}
+
+	/**
+	 * Drops the least recently used of a few entries picked at random. The
+	 * caller holds the lock.
+	 */
+	private void evictOne() {
+		ThreadLocalRandom random = ThreadLocalRandom.current();
+		CachedPath oldest = null;
+		for (int i = 0; i < EVICTION_SAMPLE; i++) {
+			CachedPath cached = this.table[random.nextInt(this.tableSize)];
+			if (oldest == null || cached.lastUsed - oldest.lastUsed < 0)
+				oldest = cached;
+		}
+		remove(oldest);
+	}
+
+	/**
+	 * Asks the access rules and then the file system what the URI names.
+	 */
+	private ResolvedPath lookUp(String uri) {
+		File file = new File(this.rootDirectory + uri);
+		String requestedPath = normalize(file);
+
+		// Nothing outside the root directory may be served, whatever the
+		// rules say
+		String path;
+		if (requestedPath.equals(this.rootPath))
+			path = "/";
+		else if (requestedPath.startsWith(this.rootPath)
+				&& requestedPath.charAt(this.rootPath.length()) == File.separatorChar)
+			path = requestedPath.substring(this.rootPath.length()).replace(
+					File.separatorChar, '/');
+		else
+			return new ResolvedPath(Protocol.FORBIDDEN_CODE, requestedPath,
+					null);
+		int status = this.accessRules.match(path);
+		if (status != Protocol.OK_CODE)
+			return new ResolvedPath(status, requestedPath, null);
+
+		if (!file.exists())
+			return new ResolvedPath(Protocol.NOT_FOUND_CODE, requestedPath,
+					null);
+		if (file.isDirectory()) {
+			// Look for default index.html file in a directory, which the
+			// rules may deny as well
+			file = new File(file, Protocol.DEFAULT_FILE);
+			String filePath = normalize(file);
+			status = this.accessRules.match(path.endsWith("/") ? path
+					+ Protocol.DEFAULT_FILE : path + "/" + Protocol.DEFAULT_FILE);
+			if (status != Protocol.OK_CODE)
+				return new ResolvedPath(status, requestedPath, filePath);
+			// Read the attributes before checking that the file exists, so
+			// that they cannot be older than the check
+			long lastModified = file.lastModified();
+			long length = file.length();
+			if (!file.isFile())
+				return new ResolvedPath(Protocol.NOT_FOUND_CODE,
+						requestedPath, filePath);
+			return new ResolvedPath(file, requestedPath, filePath, length,
+					lastModified);
+		}
+		return new ResolvedPath(file, requestedPath, requestedPath,
+				file.length(), file.lastModified());
+	}
+
+	/**
+	 * Gets the path of the file the way the {@link FileWatcher} reports it.
+	 */
+	private static String normalize(File file) {
+		return Paths.get(file.getAbsolutePath()).normalize().toString();
+	}
+
+	/**
+	 * Forgets every URI that resolved to the file, to a file or directory
+	 * below it, or to a directory it may be the index file of.
+	 *
+	 * @param path The absolute path of the file.
+	 */
+	public void fileChanged(String path) {
+		this.changes.incrementAndGet();
+		this.lock.lock();
+		try {
+			// Going backwards, the entry moved into a gap has been looked at
+			for (int i = this.tableSize - 1; i >= 0; i--) {
+				if (this.table[i].resolved.dependsOn(path))
+					remove(this.table[i]);
+			}
+		} finally {
+			this.lock.unlock();
+		}
+	}
+
+	/**
+	 * Replaces the access rules. Requests that are being resolved right now
+	 * may still use the old rules, but none of their answers are kept.
+	 *
+	 * @param accessRules The new rules.
+	 */
+	public void setAccessRules(AccessRules accessRules) {
+		this.accessRules = accessRules;
+		allFilesChanged();
+	}
+
+	/**
+	 * @return the rules for what may be served
+	 */
+	public AccessRules getAccessRules() {
+		return this.accessRules;
+	}
+
+	/**
+	 * Forgets every URI.
+	 */
+	public void allFilesChanged() {
+		this.changes.incrementAndGet();
+		this.lock.lock();
+		try {
+			this.paths.clear();
+			Arrays.fill(this.table, 0, this.tableSize, null);
+			this.tableSize = 0;
+		} finally {
+			this.lock.unlock();
+		}
+	}
+
+	/**
+	 * @return the number of paths remembered
+	 */
+	public int getSize() {
+		return this.paths.size();
+	}
+
+	/**
+	 * @return the number of requests that were resolved without asking the
+	 *         file system
+	 */
+	public long getHitCount() {
+		return this.hits.sum();
+	}
+
+	/**
+	 * @return the number of requests that had to ask the file system
+	 */
+	public long getMissCount() {
+		return this.misses.sum();
+	}
+}
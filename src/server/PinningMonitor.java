@@ -0,0 +1,117 @@
+/*
+ * PinningMonitor.java
+ * Oct 17, 2026
+ *
+ * Simple Web Server (SWS) for CSSE 477
+ *
+ * Copyright (C) 2012 Chandan Raj Rupakheti
+ *
+ * This program is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation, either
+ * version 3 of the License, or any later version.
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/lgpl.html>.
+ *
+ */
+
+package server;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordedFrame;
+import jdk.jfr.consumer.RecordingStream;
+
+/**
+ * Reports virtual threads that stay pinned to their carrier thread, e.g.
+ * because they block while holding a monitor. The counters of {@link Server}
+ * no longer take one, the monitor of {@link MappedFileCache} is the one left
+ * on the request path. A pinned virtual thread keeps a platform thread busy,
+ * which defeats the point of {@link ExecutionMode#VIRTUAL_THREAD}.
+ * <p>
+ * The monitor listens to the <tt>jdk.VirtualThreadPinned</tt> flight recorder
+ * event, prints where each pinning happened and counts them.
+ */
+public class PinningMonitor {
+	/**
+	 * Pinning shorter than this is not worth reporting.
+	 */
+	private static final Duration THRESHOLD = Duration.ofMillis(20);
+	private static final int REPORTED_FRAMES = 5;
+
+	private RecordingStream stream;
+	private AtomicLong pinnedCount;
+
+	public PinningMonitor() {
+		this.pinnedCount = new AtomicLong();
+	}
+
+	/**
+	 * Starts listening for pinning events in the background.
+	 */
+	public void start() {
+		try {
+			this.stream = new RecordingStream();
+			this.stream.enable("jdk.VirtualThreadPinned")
+					.withThreshold(THRESHOLD).withStackTrace();
+			this.stream.onEvent("jdk.VirtualThreadPinned",
+					new Consumer<RecordedEvent>() {
+						public void accept(RecordedEvent event) {
+							report(event);
+						}
+					});
+			this.stream.startAsync();
+		} catch (Exception e) {
+			// Flight recorder is not available in this runtime
+			System.err.println("Cannot monitor virtual thread pinning: " + e);
+			this.stream = null;
+		}
+	}
+
+	/**
+	 * Stops listening for pinning events.
+	 */
+	public void stop() {
+		if (this.stream != null)
+			this.stream.close();
+	}
+
+	/**
+	 * Gets the number of pinning events seen so far.
+	 *
+	 * @return the number of times a virtual thread was pinned
+	 */
+	public long getPinnedCount() {
+		return this.pinnedCount.get();
+	}
+
+	private void report(RecordedEvent event) {
+		this.pinnedCount.incrementAndGet();
+
+		StringBuilder buffer = new StringBuilder();
+		buffer.append("Virtual thread pinned for ");
+		buffer.append(event.getDuration().toMillis());
+		buffer.append(" ms");
+		if (event.getStackTrace() != null) {
+			List<RecordedFrame> frames = event.getStackTrace().getFrames();
+			for (int i = 0; i < frames.size() && i < REPORTED_FRAMES; i++) {
+				RecordedFrame frame = frames.get(i);
+				buffer.append("\n\tat ");
+				buffer.append(frame.getMethod().getType().getName());
+				buffer.append('.');
+				buffer.append(frame.getMethod().getName());
+				buffer.append(':');
+				buffer.append(frame.getLineNumber());
+			}
+		}
+		System.err.println(buffer);
+	}
+}
@@ -0,0 +1,121 @@
+/*
+ * RateLimiter.java
+ * Oct 17, 2026
+ *
+ * Simple Web Server (SWS) for CSSE 477
+ *
+ * Copyright (C) 2012 Chandan Raj Rupakheti
+ *
+ * This program is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation, either
+ * version 3 of the License, or any later version.
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/lgpl.html>.
+ *
+ */
+
+package server;
+
+import java.net.InetAddress;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Limits how many requests each client address may make, as a token bucket
+ * per address that refills at a fixed rate and holds at most a burst of
+ * tokens.
+ * <p>
+ * A bucket is kept as a single number, the time at which it will be full
+ * again (the generic cell rate algorithm). Taking a token moves that time one
+ * interval further; the request is refused if that would put it more than a
+ * burst of intervals ahead of now. The number is updated with compare and
+ * set, so checks from any number of threads never block each other, and
+ * only threads checking the same address ever retry.
+ */
+public class RateLimiter {
+	private int rate;
+	private int burst;
+	private long interval;
+	private long tolerance;
+	private ConcurrentHashMap<InetAddress, AtomicLong> buckets;
+
+	/**
+	 * @param rate The requests per second each address may make on average.
+	 * @param burst The requests an address may make at once after being quiet.
+	 */
+	public RateLimiter(int rate, int burst) {
+		this.rate = rate;
+		this.burst = burst;
+		this.interval = 1000000000L / rate;
+		this.tolerance = this.interval * (burst - 1);
+		this.buckets = new ConcurrentHashMap<InetAddress, AtomicLong>();
+	}
+
+	/**
+	 * Takes a token for a request from the address.
+	 *
+	 * @param address The address of the client.
+	 * @return <tt>true</tt> if the request may go ahead, <tt>false</tt> if the
+	 *         client is over its rate
+	 */
+	public boolean tryAcquire(InetAddress address) {
+		long now = System.nanoTime();
+		AtomicLong bucket = this.buckets.get(address);
+		if (bucket == null) {
+			AtomicLong created = new AtomicLong(now + this.interval);
+			bucket = this.buckets.putIfAbsent(address, created);
+			if (bucket == null)
+				return true;
+		}
+		for (;;) {
+			long full = bucket.get();
+			// A bucket that filled up in the past is simply full now
+			long start = full - now < 0 ? now : full;
+			if (start - now > this.tolerance)
+				return false;
+			if (bucket.compareAndSet(full, start + this.interval))
+				return true;
+		}
+	}
+
+	/**
+	 * Forgets the addresses whose buckets are full again, so that clients
+	 * that went away do not take up memory. Can run while requests are being
+	 * checked.
+	 */
+	public void cleanUp() {
+		long now = System.nanoTime();
+		Iterator<AtomicLong> i = this.buckets.values().iterator();
+		while (i.hasNext()) {
+			if (i.next().get() - now < 0)
+				i.remove();
+		}
+	}
+
+	/**
+	 * @return the requests per second each address may make on average
+	 */
+	public int getRate() {
+		return this.rate;
+	}
+
+	/**
+	 * @return the requests an address may make at once
+	 */
+	public int getBurst() {
+		return this.burst;
+	}
+
+	/**
+	 * @return the number of addresses being tracked
+	 */
+	public int getAddressCount() {
+		return this.buckets.size();
+	}
+}
@@ -0,0 +1,117 @@
+/*
+ * ReadBuffer.java
+ * Oct 17, 2026
+ *
+ * Simple Web Server (SWS) for CSSE 477
+ *
+ * Copyright (C) 2012 Chandan Raj Rupakheti
+ *
+ * This program is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation, either
+ * version 3 of the License, or any later version.
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/lgpl.html>.
+ *
+ */
+
+package server;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Consumer;
+
+/**
+ * A striped, lossy buffer of cache hits. Reader threads record their hits
+ * here without taking a lock, each thread mostly on its own stripe. Whoever
+ * holds the cache's eviction lock drains the buffer later and replays the
+ * hits against the LRU bookkeeping. When a stripe is full, new hits are
+ * simply dropped, which only makes the recency information slightly less
+ * precise.
+ *
+ * @param <E> the type of the recorded elements
+ */
+class ReadBuffer<E> {
+	/**
+	 * Slots per stripe, must be a power of two.
+	 */
+	private static final int STRIPE_LENGTH = 32;
+	private static final int STRIPE_MASK = STRIPE_LENGTH - 1;
+
+	private static class Stripe<E> {
+		private AtomicLong writes = new AtomicLong();
+		private volatile long reads;
+		private AtomicReferenceArray<E> slots = new AtomicReferenceArray<E>(
+				STRIPE_LENGTH);
+	}
+
+	private Stripe<E>[] stripes;
+	private int mask;
+
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	public ReadBuffer() {
+		int count = Integer.highestOneBit(4 * Runtime.getRuntime()
+				.availableProcessors() - 1) << 1;
+		this.stripes = new Stripe[count];
+		for (int i = 0; i < count; i++) {
+			this.stripes[i] = new Stripe<E>();
+		}
+		this.mask = count - 1;
+	}
+
+	/**
+	 * Records an element, or drops it if the stripe of this thread is full.
+	 *
+	 * @param element The element to record.
+	 * @return <tt>true</tt> if the stripe is at least half full and should
+	 *         be drained soon
+	 */
+	public boolean offer(E element) {
+		Stripe<E> stripe = this.stripes[probe() & this.mask];
+		long reads = stripe.reads;
+		long writes = stripe.writes.get();
+		long size = writes - reads;
+		if (size >= STRIPE_LENGTH)
+			return true;
+		if (stripe.writes.compareAndSet(writes, writes + 1)) {
+			stripe.slots.lazySet((int) (writes & STRIPE_MASK), element);
+			size++;
+		}
+		return size >= STRIPE_LENGTH / 2;
+	}
+
+	/**
+	 * Hands every recorded element to the consumer. Only one thread may drain
+	 * at a time.
+	 *
+	 * @param consumer Receives the elements.
+	 */
+	public void drain(Consumer<E> consumer) {
+		for (Stripe<E> stripe : this.stripes) {
+			long reads = stripe.reads;
+			long writes = stripe.writes.get();
+			while (reads < writes) {
+				int index = (int) (reads & STRIPE_MASK);
+				E element = stripe.slots.get(index);
+				if (element == null) {
+					// The writer claimed the slot but has not filled it yet
+					break;
+				}
+				stripe.slots.lazySet(index, null);
+				consumer.accept(element);
+				reads++;
+			}
+			stripe.reads = reads;
+		}
+	}
+
+	private static int probe() {
+		long id = Thread.currentThread().getId();
+		int hash = (int) (id ^ (id >>> 32)) * 0x9e3779b9;
+		return hash ^ (hash >>> 16);
+	}
+}
@@ -0,0 +1,443 @@
+/*
+ * RequestProcessor.java
+ * Oct 17, 2026
+ *
+ * Simple Web Server (SWS) for CSSE 477
+ *
+ * Copyright (C) 2012 Chandan Raj Rupakheti
+ *
+ * This program is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation, either
+ * version 3 of the License, or any later version.
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/lgpl.html>.
+ *
+ */
+
+package server;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.util.List;
+
+import protocol.ByteRange;
+import protocol.HttpRequest;
+import protocol.HttpResponse;
+import protocol.HttpResponseFactory;
+import protocol.Protocol;
+
+/**
+ * Turns a parsed {@link HttpRequest} into the {@link HttpResponse} that should
+ * be sent back. It does no I/O on the connection itself, so it is shared by
+ * the blocking {@link ConnectionHandler} and the non-blocking
+ * {@link EventLoop}.
+ */
+public class RequestProcessor {
+	private Server server;
+
+	public RequestProcessor(Server server) {
+		this.server = server;
+	}
+
+	/**
+	 * Creates the response for the supplied request. The
+	 * {@link Protocol#CONNECTION} header of the response tells whether the
+	 * connection should be kept open afterwards.
+	 *
+	 * @param request The request to respond to.
+	 * @return The response, never <tt>null</tt>.
+	 */
+	public HttpResponse process(HttpRequest request) {
+		return process(request, false);
+	}
+
+	/**
+	 * Creates the response for the supplied request, optionally only if that
+	 * can be done from memory. A response created from memory holds its body,
+	 * if any, so sending it does not touch the file system either.
+	 *
+	 * @param request The request to respond to.
+	 * @param memoryOnly Whether to give up rather than look up, read, map or
+	 *            compress a file.
+	 * @return The response, or <tt>null</tt> if <tt>memoryOnly</tt> is set and
+	 *         the response needs the file system.
+	 */
+	public HttpResponse process(HttpRequest request, boolean memoryOnly) {
+		HttpResponse response = null;
+		try {
+			// HTTP/1.0 clients are answered too, in HTTP/1.1 as they allow
+			String version = request.getVersion();
+			if (!version.equalsIgnoreCase(Protocol.VERSION)
+					&& !version.equalsIgnoreCase(Protocol.VERSION_1_0)) {
+				response = HttpResponseFactory
+						.create505NotSupported(Protocol.CLOSE);
+			} else if (request.getMethod().equalsIgnoreCase(Protocol.GET)) {
+				String cResponse = wantsPersistent(request) ? Protocol.OPEN
+						: Protocol.CLOSE;
+				// Handling GET request here
+				// The status page is not a file, it comes first
+				ServerStatus status = server.getServerStatus();
+				if (status != null && status.isStatusUri(request.getUri()))
+					return createStatusResponse(status, cResponse);
+
+				// Find the file the URI names, usually without asking the
+				// file system again
+				PathResolver resolver = server.getPathResolver();
+				ResolvedPath resolved = memoryOnly ? resolver
+						.resolveIfPresent(request.getUri()) : resolver
+						.resolve(request.getUri());
+				if (resolved == null)
+					return null;
+				switch (resolved.getStatus()) {
+				case Protocol.OK_CODE:
+					// Lets create 200 OK response
+					// (or 206, 304 or 416 if appropriate)
+					response = createFileResponse(resolved, request, cResponse,
+							memoryOnly);
+					if (response == null)
+						return null;
+					break;
+				case Protocol.FORBIDDEN_CODE:
+					response = HttpResponseFactory.create403Forbidden(cResponse);
+					break;
+				case Protocol.GONE_CODE:
+					response = HttpResponseFactory.create410Gone(cResponse);
+					break;
+				default:
+					// File does not exist (or is hidden) so lets create 404
+					// file not found code
+					response = HttpResponseFactory.create404NotFound(cResponse);
+					break;
+				}
+			} else {
+				response = HttpResponseFactory
+						.create501NotImplemented(Protocol.CLOSE);
+			}
+		} catch (Exception e) {
+			e.printStackTrace();
+		}
+
+		// Answering failed, which is all the client can be told
+		if (response == null) {
+			response = HttpResponseFactory.create400BadRequest(Protocol.CLOSE);
+		}
+		return response;
+	}
+
+	/**
+	 * Creates the response for the status page, unless the access rules deny
+	 * its URI like that of any file.
+	 */
+	private HttpResponse createStatusResponse(ServerStatus status,
+			String connection) {
+		switch (server.getPathResolver().getAccessRules().match(
+				status.getUri())) {
+		case Protocol.OK_CODE:
+			return HttpResponseFactory.create200OK(ServerStatus.CONTENT_TYPE,
+					status.render(), connection);
+		case Protocol.FORBIDDEN_CODE:
+			return HttpResponseFactory.create403Forbidden(connection);
+		case Protocol.GONE_CODE:
+			return HttpResponseFactory.create410Gone(connection);
+		default:
+			return HttpResponseFactory.create404NotFound(connection);
+		}
+	}
+
+	/**
+	 * Creates a 200 OK response for the file, or a 304 if the client's copy is
+	 * still current, or a 206 or 416 if the client asked for ranges of the
+	 * file. Text files are sent compressed if the client accepts it and
+	 * compressing actually made them smaller.
+	 *
+	 * @return the response, or <tt>null</tt> if <tt>memoryOnly</tt> is set
+	 *         and the file is not in the heap cache
+	 */
+	private HttpResponse createFileResponse(ResolvedPath resolved,
+			HttpRequest request, String connection, boolean memoryOnly) {
+		ServerCache serverCache = this.server.getServerCache();
+		File file = resolved.getFile();
+
+		// Revalidating only needs what the cache already knows about the
+		// file, or else what was found out when resolving it, never the
+		// contents
+		CachedFile cached = serverCache.getFileIfPresent(file);
+		long lastModified;
+		long length;
+		if (cached != null) {
+			lastModified = cached.getLastModified();
+			length = cached.getLength();
+		} else {
+			lastModified = resolved.getLastModified();
+			length = resolved.getLength();
+		}
+		// Entity tags only depend on what is known about the file, so a
+		// client whose copy is current gets its 304 without the file being
+		// read or compressed. The tag has to be the one of the variant the
+		// client got, or clients that got the other one never get a 304.
+		String encoding = null;
+		if (resolved.isCompressible())
+			encoding = chooseEncoding(request
+					.getHeader(Protocol.ACCEPT_ENCODING));
+		String identityETag = HttpResponseFactory.createETag(lastModified,
+				length, null);
+		String encodedETag = encoding != null ? HttpResponseFactory
+				.createETag(lastModified, length, encoding) : null;
+		String etag = notModifiedETag(request, encodedETag, identityETag,
+				lastModified);
+		if (etag != null)
+			return HttpResponseFactory.create304NotModified(file.getName(),
+					etag, connection);
+
+		// Ranges are always of the file as it is
+		String range = request.getHeader(Protocol.RANGE);
+		if (range != null
+				&& isRangeCurrent(request.getHeader(Protocol.IF_RANGE),
+						identityETag, lastModified)) {
+			if (cached == null && memoryOnly)
+				return null;
+			HttpResponse response = createRangeResponse(file, cached, range,
+					lastModified, connection);
+			if (response != null) {
+				if (cached != null)
+					response.setCacheHit(true);
+				return response;
+			}
+		}
+
+		// Compressing may not make the file smaller, then it is sent as it is
+		CachedFile compressed = null;
+		if (encoding != null) {
+			compressed = memoryOnly ? serverCache.getFileIfPresent(file,
+					encoding) : serverCache.getFile(file, encoding);
+			if (compressed == null && memoryOnly)
+				return null;
+			if (compressed != null && compressed.getLength() >= length)
+				compressed = null;
+		}
+
+		// Cached files come with their header fields already encoded
+		boolean cacheHit = cached != null;
+		if (compressed != null)
+			cached = compressed;
+		else if (cached == null && memoryOnly)
+			return null;
+		else if (cached == null)
+			cached = serverCache.getFile(file);
+		if (cached != null) {
+			HttpResponse response = HttpResponseFactory.create200OK(
+					cached.getHeadBlock(), cached.getBody(), connection);
+			response.setCacheHit(cacheHit);
+			return response;
+		}
+		return HttpResponseFactory.create200OK(file, length, lastModified,
+				connection);
+	}
+
+	/**
+	 * Creates a 206 response with the requested ranges, taken from memory if
+	 * the file is cached or mapped, or a 416 if none of them lie within the
+	 * file.
+	 *
+	 * @return the response, or <tt>null</tt> if the range field should be
+	 *         ignored and the whole file sent
+	 */
+	private HttpResponse createRangeResponse(File file, CachedFile cached,
+			String range, long lastModified, String connection) {
+		ByteBuffer whole = cached != null ? cached.getBody() : this.server
+				.getServerCache().getBuffer(file);
+		long length = whole != null ? whole.remaining() : file.length();
+		List<ByteRange> ranges = ByteRange.parse(range, length);
+		if (ranges == null)
+			return null;
+		if (ranges.isEmpty())
+			return HttpResponseFactory.create416RangeNotSatisfiable(length,
+					connection);
+		return HttpResponseFactory.create206PartialContent(file, whole,
+				length, lastModified, ranges, connection);
+	}
+
+	/**
+	 * Checks the conditional fields of the request against the version of
+	 * the file the client would get. <tt>If-None-Match</tt> takes
+	 * precedence; <tt>If-Modified-Since</tt> is only looked at without it.
+	 *
+	 * @param encodedETag The tag of the compressed variant, or <tt>null</tt>
+	 *            if the client would get the file as it is.
+	 * @return the entity tag to send with a 304, or <tt>null</tt> if the
+	 *         file has to be sent
+	 */
+	private static String notModifiedETag(HttpRequest request,
+			String encodedETag, String identityETag, long lastModified) {
+		String ifNoneMatch = request.getHeader(Protocol.IF_NONE_MATCH);
+		if (ifNoneMatch != null) {
+			// Files that do not get smaller are sent as they are even to
+			// clients that accept compression, so either tag may be theirs
+			if (encodedETag != null && matchesETag(ifNoneMatch, encodedETag))
+				return encodedETag;
+			if (matchesETag(ifNoneMatch, identityETag))
+				return identityETag;
+			return null;
+		}
+
+		String ifModifiedSince = request
+				.getHeader(Protocol.IF_MODIFIED_SINCE);
+		if (ifModifiedSince == null)
+			return null;
+		long since = GMTConversion.parse(ifModifiedSince);
+		// HTTP dates only have whole seconds
+		if (since >= 0 && lastModified / 1000 <= since / 1000)
+			return encodedETag != null ? encodedETag : identityETag;
+		return null;
+	}
+
+	/**
+	 * Checks whether a list of entity tags, or <tt>*</tt>, contains the tag.
+	 * Weak tags match their strong counterpart.
+	 */
+	private static boolean matchesETag(String list, String etag) {
+		for (String tag : list.split(",")) {
+			tag = tag.trim();
+			if (tag.equals("*"))
+				return true;
+			if (tag.startsWith("W/"))
+				tag = tag.substring(2);
+			if (tag.equals(etag))
+				return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Checks the <tt>If-Range</tt> field: ranges are only sent if the client
+	 * does not make them conditional, or if its copy is still current.
+	 * Otherwise it gets the whole file. The field holds either an entity tag,
+	 * which has to match exactly, or the time the file was last modified.
+	 */
+	private static boolean isRangeCurrent(String ifRange, String etag,
+			long lastModified) {
+		if (ifRange == null)
+			return true;
+		ifRange = ifRange.trim();
+		if (ifRange.startsWith("\""))
+			return ifRange.equals(etag);
+		if (ifRange.startsWith("W/"))
+			return false;
+		long date = GMTConversion.parse(ifRange);
+		return date >= 0 && date / 1000 == lastModified / 1000;
+	}
+
+	/**
+	 * Picks the content coding to compress a response with from the
+	 * <tt>Accept-Encoding</tt> field of the request, taking the quality
+	 * values into account. gzip wins a tie.
+	 *
+	 * @param acceptEncoding The value of the field, may be <tt>null</tt>.
+	 * @return {@link Protocol#GZIP}, {@link Protocol#DEFLATE}, or
+	 *         <tt>null</tt> to send the file as it is
+	 */
+	public static String chooseEncoding(String acceptEncoding) {
+		if (acceptEncoding == null)
+			return null;
+		float gzip = -1;
+		float deflate = -1;
+		float any = -1;
+		for (String coding : acceptEncoding.split(",")) {
+			String name = coding;
+			float quality = 1;
+			int semicolon = coding.indexOf(';');
+			if (semicolon >= 0) {
+				name = coding.substring(0, semicolon);
+				quality = parseQuality(coding.substring(semicolon + 1));
+			}
+			name = name.trim();
+			if (name.equalsIgnoreCase(Protocol.GZIP))
+				gzip = quality;
+			else if (name.equalsIgnoreCase(Protocol.DEFLATE))
+				deflate = quality;
+			else if (name.equals("*"))
+				any = quality;
+		}
+		// Codings that are not named are covered by "*"
+		if (gzip < 0)
+			gzip = any;
+		if (deflate < 0)
+			deflate = any;
+		if (gzip > 0 && gzip >= deflate)
+			return Protocol.GZIP;
+		if (deflate > 0)
+			return Protocol.DEFLATE;
+		return null;
+	}
+
+	/**
+	 * Parses e.g. <tt>q=0.5</tt>. Anything that cannot be parsed counts as
+	 * not acceptable.
+	 */
+	private static float parseQuality(String parameter) {
+		parameter = parameter.trim();
+		if (!parameter.startsWith("q=") && !parameter.startsWith("Q="))
+			return 1;
+		try {
+			return Float.parseFloat(parameter.substring(2).trim());
+		} catch (NumberFormatException e) {
+			return 0;
+		}
+	}
+
+	/**
+	 * Checks whether the client wants to keep the connection open. HTTP/1.1
+	 * connections are persistent unless the client asks to close them, older
+	 * clients have to ask for keep-alive.
+	 *
+	 * @param request The request that was received.
+	 * @return <tt>true</tt> if the connection should stay open
+	 */
+	public static boolean wantsPersistent(HttpRequest request) {
+		String connection = request.getHeader(Protocol.CONNECTION);
+		if (request.getVersion().equalsIgnoreCase(Protocol.VERSION))
+			return connection == null || !hasToken(connection, Protocol.CLOSE);
+		return connection != null && hasToken(connection, Protocol.OPEN);
+	}
+
+	/**
+	 * Checks whether a comma separated header value contains the token,
+	 * ignoring case.
+	 */
+	private static boolean hasToken(String value, String token) {
+		int start = 0;
+		while (start <= value.length()) {
+			int end = value.indexOf(',', start);
+			if (end < 0)
+				end = value.length();
+			int from = start;
+			int to = end;
+			while (from < to && value.charAt(from) == Protocol.SPACE)
+				from++;
+			while (to > from && value.charAt(to - 1) == Protocol.SPACE)
+				to--;
+			if (to - from == token.length()
+					&& value.regionMatches(true, from, token, 0, token.length()))
+				return true;
+			start = end + 1;
+		}
+		return false;
+	}
+
+	/**
+	 * Checks whether the connection may be kept open after sending the
+	 * response.
+	 *
+	 * @param response The response that is about to be sent.
+	 * @return <tt>true</tt> if the response asks to keep the connection open
+	 */
+	public static boolean isPersistent(HttpResponse response) {
+		return Protocol.OPEN.equals(response.getHeader().get(
+				Protocol.CONNECTION));
+	}
+}
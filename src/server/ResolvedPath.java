@@ -0,0 +1,132 @@
+/*
+ * ResolvedPath.java
+ * Oct 17, 2026
+ *
+ * Simple Web Server (SWS) for CSSE 477
+ *
+ * Copyright (C) 2012 Chandan Raj Rupakheti
+ *
+ * This program is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation, either
+ * version 3 of the License, or any later version.
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/lgpl.html>.
+ *
+ */
+
+
+package server;
+
+import java.io.File;
+
+import protocol.Protocol;
+
+/**
+ * What the {@link PathResolver} found out about a request URI: which file it
+ * names, after looking for the index file of a directory, the status the
+ * {@link AccessRules} and the file system give it, and the attributes of the
+ * file that a response needs. The object is immutable and describes the file
+ * system at the time it was resolved; the resolver drops it as soon as any
+ * file it depends on changes.
+ */
+public class ResolvedPath {
+	private final int status;
+	private final File file;
+	private final String requestedPath;
+	private final String filePath;
+	private final long length;
+	private final long lastModified;
+	private final boolean compressible;
+
+	/**
+	 * Describes a URI that names no file that may be served.
+	 */
+	ResolvedPath(int status, String requestedPath, String filePath) {
+		this(status, null, requestedPath, filePath, 0, 0);
+	}
+
+	/**
+	 * Describes a URI that names a file that may be served.
+	 */
+	ResolvedPath(File file, String requestedPath, String filePath,
+			long length, long lastModified) {
+		this(Protocol.OK_CODE, file, requestedPath, filePath, length,
+				lastModified);
+	}
+
+	private ResolvedPath(int status, File file, String requestedPath,
+			String filePath, long length, long lastModified) {
+		this.status = status;
+		this.file = file;
+		this.requestedPath = requestedPath;
+		this.filePath = filePath;
+		this.length = length;
+		this.lastModified = lastModified;
+		this.compressible = file != null
+				&& ServerCache.isCompressible(file.getName(), length);
+	}
+
+	/**
+	 * @return {@link Protocol#OK_CODE} if the file should be served, or the
+	 *         status to answer with instead, e.g.
+	 *         {@link Protocol#NOT_FOUND_CODE}
+	 */
+	public int getStatus() {
+		return this.status;
+	}
+
+	/**
+	 * @return the file to serve, the index file for a directory, or
+	 *         <tt>null</tt> if there is none
+	 */
+	public File getFile() {
+		return this.file;
+	}
+
+	/**
+	 * @return the length of the file in bytes
+	 */
+	public long getLength() {
+		return this.length;
+	}
+
+	/**
+	 * @return the time the file was last modified, in milliseconds since the
+	 *         epoch
+	 */
+	public long getLastModified() {
+		return this.lastModified;
+	}
+
+	/**
+	 * @return <tt>true</tt> if the file is worth sending compressed, see
+	 *         {@link ServerCache#isCompressible(String, long)}
+	 */
+	public boolean isCompressible() {
+		return this.compressible;
+	}
+
+	/**
+	 * Checks whether a change to the file or directory at the path can
+	 * change what the URI resolves to: the path is the one the URI names, the
+	 * file found for it, or a directory above either of them.
+	 *
+	 * @param path The normalized absolute path that changed.
+	 * @return <tt>true</tt> if this object is out of date
+	 */
+	boolean dependsOn(String path) {
+		return isSameOrBelow(this.requestedPath, path)
+				|| (this.filePath != null && isSameOrBelow(this.filePath, path));
+	}
+
+	private static boolean isSameOrBelow(String child, String parent) {
+		return child.startsWith(parent)
+				&& (child.length() == parent.length() || child.charAt(parent
+						.length()) == File.separatorChar);
+	}
+}
@@ -23,17 +23,22 @@ package server;
 
 import gui.WebServer;
 
-import java.io.BufferedWriter;
 import java.io.File;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.lang.reflect.Method;
 import java.net.InetAddress;
+import java.net.InetSocketAddress;
 import java.net.ServerSocket;
 import java.net.Socket;
-import java.util.HashMap;
-import java.util.HashSet;
-import java.util.Iterator;
-import java.util.Map.Entry;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.text.ParseException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import protocol.HttpRequest;
+import protocol.HttpResponse;
 
 /**
  * This represents a welcoming server for the incoming TCP request from a HTTP
@@ -42,60 +47,69 @@ import java.util.Map.Entry;
  * @author Chandan R. Rupakheti (rupakhet@rose-hulman.edu)
  */
 public class Server implements Runnable {
+	/**
+	 * Moves the blacklist on by one tick every {@link Blacklist#TICK_MILLIS}
+	 * and now and then lets the rate limiter forget idle clients. Each tick
+	 * also picks up changes to the access rules file.
+	 */
 	private class BlacklistTimer extends Thread {
-		private HashMap<String, Long> map;
-		private boolean loop;
+		private volatile boolean loop;
 
-		public BlacklistTimer(HashMap<String, Long> map) {
+		public BlacklistTimer() {
+			super("sws-blacklist");
+			setDaemon(true);
 			this.loop = true;
-			this.map = map;
-
 		}
 
 		public void run() {
+			long lastCleanUp = System.currentTimeMillis();
 			while (loop) {
 				try {
-					sleep(BLACKLIST_THREAD_INTERVAL);
+					sleep(Blacklist.TICK_MILLIS);
 				} catch (InterruptedException e) {
-					e.printStackTrace();
+					break;
 				}
-				Iterator<Entry<String, Long>> i = map.entrySet().iterator();
-				while (i.hasNext()) {
-					Entry<String, Long> ip = i.next();
-					if (ip.getValue() < System.currentTimeMillis()) {
-						this.map.remove(ip.getKey());
-					}
+				blacklist.expire();
+				checkAccessRules();
+				long now = System.currentTimeMillis();
+				if (now - lastCleanUp >= RATE_LIMITER_CLEAN_UP_INTERVAL) {
+					rateLimiter.cleanUp();
+					lastCleanUp = now;
 				}
 			}
 		}
 
 		public void stopLoop() {
 			this.loop = false;
+			interrupt();
 		}
 	}
 
 	private String rootDirectory;
 	private int port;
 	private boolean stop;
-	private ServerSocket welcomeSocket;
+	private volatile ServerSocket welcomeSocket;
 	private ServerCache serverCache;
+	private PathResolver pathResolver;
+	private ExecutionMode mode;
+	private ExecutorService executor;
+	private WorkerPool workerPool;
+	private PinningMonitor pinningMonitor;
 
-	private long connections;
-	private long serviceTime;
+	private LatencyRecorder latencies;
+	private ServerCounters counters;
+	private ServerStatus status;
+	private volatile AccessLog accessLog;
 
 	private WebServer window;
 
-	private HashSet<String> forbiddenPages;
-	private HashSet<String> hiddenPages;
-	private long lastSecond;
-
-	private HashMap<InetAddress, Integer> numRequest;
-	private static final int REQUESTS_PER_SECOND_THREHOLD = 100;
-	private HashMap<String, Long> blacklist;
+	private File accessRulesFile;
+	private volatile long accessRulesModified;
+	private RateLimiter rateLimiter;
+	private Blacklist blacklist;
 	private static final int BLACKLIST_TIME = 900000;
-	private static final int BLACKLIST_THREAD_INTERVAL = 600000;
+	private static final int RATE_LIMITER_CLEAN_UP_INTERVAL = 600000;
 
-	private static final int MAX_CACHED_FILES = 20;
 	private File log;
 
 	/**
@@ -106,24 +120,24 @@ public class Server implements Runnable {
 		this.rootDirectory = rootDirectory;
 		this.port = port;
 		this.stop = false;
-		this.connections = 0;
-		this.serviceTime = 0;
+		this.latencies = new LatencyRecorder();
+		this.counters = new ServerCounters();
+		String statusUri = ServerConfig.getStatusUri();
+		if (statusUri != null)
+			this.status = new ServerStatus(this, statusUri);
 		this.window = window;
-		this.serverCache = new ServerCache(MAX_CACHED_FILES);
-		this.forbiddenPages = new HashSet<String>();
-		this.hiddenPages = new HashSet<String>();
-		this.numRequest = new HashMap<InetAddress, Integer>();
-		this.blacklist = new HashMap<String, Long>();
-		// Try to add "forbidden.html" to forbidden files just as an example.
-		File f = new File(rootDirectory + "/forbidden.html");
-		if (f.exists()) {
-			forbiddenPages.add(f.getAbsolutePath());
-		}
-		// Try to add "hidden.html" to hidden files just as an example.
-		f = new File(rootDirectory + "/hidden.html");
-		if (f.exists()) {
-			hiddenPages.add(f.getAbsolutePath());
-		}
+		this.serverCache = new ServerCache(ServerConfig.getCacheBytes(),
+				ServerConfig.getCachePolicy(),
+				ServerConfig.getMappedCacheBytes());
+		this.mode = ServerConfig.getExecutionMode();
+		this.rateLimiter = new RateLimiter(ServerConfig.getRate(),
+				ServerConfig.getBurst());
+		this.blacklist = new Blacklist();
+		this.pathResolver = new PathResolver(rootDirectory,
+				AccessRules.createDefault());
+		this.accessRulesFile = ServerConfig.getAccessRulesFile();
+		if (this.accessRulesFile != null)
+			reloadAccessRules();
 		//Make the log
 		this.log = new File("serverLog.log");
 		if (!this.log.exists())
@@ -134,12 +148,56 @@ public class Server implements Runnable {
 			}
 	}
 
-	public HashSet<String> getForbiddenPages() {
-		return this.forbiddenPages;
+	/**
+	 * Reads the access rules file again, if there is one, and starts using
+	 * the new rules. If the file cannot be read or has errors, the rules in
+	 * use are kept.
+	 * 
+	 * @return <tt>true</tt> if new rules are in use
+	 */
+	public synchronized boolean reloadAccessRules() {
+		if (this.accessRulesFile == null)
+			return false;
+		long lastModified = this.accessRulesFile.lastModified();
+		this.accessRulesModified = lastModified;
+		try {
+			this.pathResolver.setAccessRules(AccessRules
+					.load(this.accessRulesFile));
+			return true;
+		} catch (IOException e) {
+			e.printStackTrace();
+		} catch (ParseException e) {
+			e.printStackTrace();
+		}
+		return false;
 	}
-	
-	public HashSet<String> getHiddenPages() {
-		return this.hiddenPages;
+
+	/**
+	 * Reloads the access rules if the file changed since it was last read.
+	 */
+	private void checkAccessRules() {
+		if (this.accessRulesFile != null
+				&& this.accessRulesFile.lastModified() != this.accessRulesModified)
+			reloadAccessRules();
+	}
+
+	/**
+	 * Gets the cache of file contents shared by all connections, e.g. to read
+	 * its hit and miss counts.
+	 * 
+	 * @return the server cache
+	 */
+	public ServerCache getServerCache() {
+		return this.serverCache;
+	}
+
+	/**
+	 * Gets what request URIs resolve to, shared by all connections.
+	 * 
+	 * @return the path resolver
+	 */
+	public PathResolver getPathResolver() {
+		return this.pathResolver;
 	}
 
 	/**
@@ -161,120 +219,349 @@ public class Server implements Runnable {
 	}
 
 	/**
-	 * Returns connections serviced per second. Synchronized to be used in
-	 * threaded environment.
+	 * Gets the port the server is listening on. It is the one the server was
+	 * given, unless that was 0 and the system picked a free one.
 	 * 
-	 * @return
+	 * @return the port, or -1 if the server is not listening yet
+	 */
+	public int getLocalPort() {
+		ServerSocket socket = this.welcomeSocket;
+		if (socket == null)
+			return -1;
+		return socket.getLocalPort();
+	}
+
+	/**
+	 * Gets the latencies of the requests this server answered, e.g. to watch
+	 * its tail latency.
+	 * 
+	 * @return the latency histograms
+	 */
+	public LatencyRecorder getLatencies() {
+		return this.latencies;
+	}
+
+	/**
+	 * Gets the counts of connections, requests, bytes and so on, e.g. to take
+	 * a snapshot of them.
+	 * 
+	 * @return the counters
+	 */
+	public ServerCounters getCounters() {
+		return this.counters;
+	}
+
+	/**
+	 * Gets the page that reports on this server, for monitoring.
+	 * 
+	 * @return the status page, or <tt>null</tt> if it is turned off
+	 */
+	public ServerStatus getServerStatus() {
+		return this.status;
+	}
+
+	/**
+	 * Gets the log every request is written to.
+	 * 
+	 * @return the access log, or <tt>null</tt> if it is turned off or the
+	 *         server is not running
+	 */
+	public AccessLog getAccessLog() {
+		return this.accessLog;
+	}
+
+	/**
+	 * Accounts for a request whose response is ready to be written, in the
+	 * latency histograms, the counters and the access log.
+	 * 
+	 * @param address The address of the client.
+	 * @param request The request, which must still be valid.
+	 * @param response The response to it.
+	 * @param nanos How long it took to answer, in nanoseconds.
+	 * @param reused <tt>true</tt> if an earlier request came in on the same
+	 *            connection
+	 */
+	public void requestAnswered(InetAddress address, HttpRequest request,
+			HttpResponse response, long nanos, boolean reused) {
+		this.latencies.record(request, response, nanos);
+		this.counters.requestAnswered(response, reused);
+		AccessLog accessLog = this.accessLog;
+		if (accessLog != null)
+			accessLog.log(address, request, response, nanos);
+	}
+
+	/**
+	 * Gets the way this server services connections.
+	 * 
+	 * @return the execution mode
+	 */
+	public ExecutionMode getExecutionMode() {
+		return this.mode;
+	}
+
+	/**
+	 * Sets the way this server services connections. Only has an effect if it
+	 * is called before the server is started.
+	 * 
+	 * @param mode
+	 */
+	public void setExecutionMode(ExecutionMode mode) {
+		this.mode = mode;
+	}
+
+	/**
+	 * Sets the executor that runs the {@link ConnectionHandler}s instead of a
+	 * new thread per connection. Only has an effect if it is called before
+	 * the server is started, and not in {@link ExecutionMode#EVENT_LOOP}
+	 * mode. The server shuts the executor down when it stops.
+	 * 
+	 * @param executor
 	 */
-	public synchronized double getServiceRate() {
-		if (this.serviceTime == 0)
-			return Long.MIN_VALUE;
-		double rate = this.connections / (double) this.serviceTime;
-		rate = rate * 1000;
-		return rate;
+	public void setExecutor(ExecutorService executor) {
+		this.executor = executor;
 	}
 
 	/**
-	 * Increments number of connection by the supplied value. Synchronized to be
-	 * used in threaded environment.
+	 * Gets the number of times a connection handler pinned its carrier
+	 * thread. Always zero unless the server runs in
+	 * {@link ExecutionMode#VIRTUAL_THREAD} mode.
 	 * 
-	 * @param value
+	 * @return the number of pinning events
 	 */
-	public synchronized void incrementConnections(long value) {
-		this.connections += value;
+	public long getPinnedCount() {
+		if (this.pinningMonitor == null)
+			return 0;
+		return this.pinningMonitor.getPinnedCount();
 	}
 
 	/**
-	 * Increments the service time by the supplied value. Synchronized to be
-	 * used in threaded environment.
+	 * Gets the worker pool that handles connections in
+	 * {@link ExecutionMode#WORKER_POOL} mode, e.g. to read its queue depth
+	 * and rejection count.
 	 * 
-	 * @param value
+	 * @return the worker pool, or <tt>null</tt> in any other mode
 	 */
-	public synchronized void incrementServiceTime(long value) {
-		this.serviceTime += value;
+	public WorkerPool getWorkerPool() {
+		return this.workerPool;
+	}
+
+	/**
+	 * @return the clients that are banned for making too many requests
+	 */
+	public Blacklist getBlacklist() {
+		return this.blacklist;
+	}
+
+	/**
+	 * @return the number of clients that are banned right now
+	 */
+	public int getBanCount() {
+		return this.blacklist.getBanCount();
+	}
+
+	/**
+	 * @return the limiter that decides which clients are making too many
+	 *         requests
+	 */
+	public RateLimiter getRateLimiter() {
+		return this.rateLimiter;
 	}
 
 	/**
 	 * The entry method for the main server thread that accepts incoming TCP
 	 * connection request and creates a {@link ConnectionHandler} for the
-	 * request.
+	 * request, or passes it to the {@link EventLoop} in event loop mode.
 	 */
 	public void run() {
 		// SecurityManager s = new SimpleSecurityManager(blacklist);
 		// System.setSecurityManager(s);
 		try {
-			this.welcomeSocket = new ServerSocket(port);
-			BlacklistTimer blacklistTimer = new BlacklistTimer(this.blacklist);
+			BlacklistTimer blacklistTimer = new BlacklistTimer();
 			blacklistTimer.start();
 
-			// Now keep welcoming new connections until stop flag is set to true
-			while (true) {
-				// Listen for incoming socket connection
-				// This method block until somebody makes a request
-				Socket connectionSocket = this.welcomeSocket.accept();
-				if (DOSCheck(connectionSocket)) {
-					connectionSocket.close();
-				} else {
-					// System.out.println("Address: "
-					// + connectionSocket.getInetAddress());
-
-					// Come out of the loop if the stop flag is set
-					if (this.stop)
-						break;
-
-					// Create a handler for this incoming connection and start
-					// the handler in a new thread
-					ConnectionHandler handler = new ConnectionHandler(this,
-							connectionSocket, serverCache);
-					new Thread(handler).start();
+			// Forget cached files and resolved paths as soon as they change
+			// on disk
+			FileWatcher fileWatcher = new FileWatcher(this.rootDirectory);
+			fileWatcher.addListener(this.serverCache);
+			fileWatcher.addListener(this.pathResolver);
+			fileWatcher.start();
+
+			// A log that cannot be opened is no reason not to serve
+			File accessLogFile = ServerConfig.getAccessLogFile();
+			if (accessLogFile != null) {
+				try {
+					this.accessLog = new AccessLog(accessLogFile,
+							ServerConfig.getAccessLogBuffer(),
+							ServerConfig.getAccessLogBytes(),
+							ServerConfig.getAccessLogFiles());
+				} catch (IOException e) {
+					e.printStackTrace();
+					logError(e);
 				}
 			}
+
+			if (this.mode == ExecutionMode.EVENT_LOOP)
+				runEventLoop();
+			else
+				runThreadPerConnection();
+
 			this.welcomeSocket.close();
 			blacklistTimer.stopLoop();
+			fileWatcher.stopWatching();
 		} catch (Exception e) {
-			FileWriter fstream;
-			try {
-				fstream = new FileWriter(this.log.getAbsolutePath());
-				BufferedWriter out = new BufferedWriter(fstream);
-				out.write(e.toString());
-			} catch (IOException e1) {
-				e1.printStackTrace();
+			logError(e);
+		} finally {
+			if (this.accessLog != null)
+				this.accessLog.close();
+		}
+	}
+
+	/**
+	 * Accepts connections and runs a {@link ConnectionHandler} for each of
+	 * them, either on a new thread or on the executor.
+	 */
+	private void runThreadPerConnection() throws IOException {
+		if (this.executor == null && this.mode == ExecutionMode.VIRTUAL_THREAD)
+			this.executor = newVirtualThreadExecutor();
+		if (this.mode == ExecutionMode.WORKER_POOL)
+			this.workerPool = new WorkerPool(ServerConfig.getWorkerThreads(),
+					ServerConfig.getQueueDepth(), ServerConfig.getRetryAfter(),
+					this.counters);
+		if (this.mode == ExecutionMode.VIRTUAL_THREAD && this.executor != null) {
+			this.pinningMonitor = new PinningMonitor();
+			this.pinningMonitor.start();
+		}
+		// Accept through a channel so the handlers can send files with
+		// FileChannel.transferTo
+		ServerSocketChannel channel = ServerSocketChannel.open();
+		this.welcomeSocket = channel.socket();
+		this.welcomeSocket.bind(new InetSocketAddress(port));
+
+		// Now keep welcoming new connections until stop flag is set to true
+		while (true) {
+			// Listen for incoming socket connection
+			// This method block until somebody makes a request
+			Socket connectionSocket = channel.accept().socket();
+			if (isBanned(connectionSocket)) {
+				connectionSocket.close();
+			} else {
+				// Come out of the loop if the stop flag is set
+				if (this.stop)
+					break;
+
+				// Create a handler for this incoming connection and start
+				// the handler in a new thread
+				ConnectionHandler handler = new ConnectionHandler(this,
+						connectionSocket, serverCache);
+				if (this.workerPool != null) {
+					// The pool counts the connections it rejects
+					if (!this.workerPool.execute(handler))
+						continue;
+				} else if (this.executor != null)
+					this.executor.execute(handler);
+				else
+					new Thread(handler).start();
+				this.counters.connectionAccepted();
 			}
 		}
+
+		if (this.workerPool != null)
+			this.workerPool.shutdown();
+		if (this.executor != null)
+			this.executor.shutdown();
+		if (this.pinningMonitor != null)
+			this.pinningMonitor.stop();
 	}
 
-	public boolean DOSCheck(Socket connectionSocket) {
-		// Iterator it = blacklist.iterator();
-		// System.out.println("Blacklist: ");
-		// while (it.hasNext()) {
-		// System.out.println(it.next());
-		// }
-		// Iterator it2 = numRequest.entrySet().iterator();
-		// System.out.println("NumRequest: ");
-		// while (it2.hasNext()) {
-		// System.out.println(it2.next());
-		// }
-		if (blacklist.containsKey(connectionSocket.getInetAddress()))
+	/**
+	 * Creates an executor that starts a virtual thread per task. The method
+	 * is looked up reflectively so the server still runs on runtimes without
+	 * virtual threads.
+	 * 
+	 * @return the executor, or <tt>null</tt> if virtual threads are not
+	 *         available
+	 */
+	private static ExecutorService newVirtualThreadExecutor() {
+		try {
+			Method factory = Executors.class
+					.getMethod("newVirtualThreadPerTaskExecutor");
+			return (ExecutorService) factory.invoke(null);
+		} catch (Exception e) {
+			System.err.println("Virtual threads are not available, "
+					+ "falling back to a thread per connection");
+			return null;
+		}
+	}
+
+	/**
+	 * Accepts connections and hands them to the selector threads of an
+	 * {@link EventLoop}.
+	 */
+	private void runEventLoop() throws IOException {
+		ServerSocketChannel channel = ServerSocketChannel.open();
+		this.welcomeSocket = channel.socket();
+		this.welcomeSocket.bind(new InetSocketAddress(port));
+
+		EventLoop eventLoop = new EventLoop(this, serverCache,
+				ServerConfig.getSelectorThreads(),
+				ServerConfig.getWorkerThreads());
+		eventLoop.start();
+
+		// Now keep welcoming new connections until stop flag is set to true
+		while (true) {
+			// The accept thread blocks, only the selector threads do not
+			SocketChannel connectionChannel = channel.accept();
+			if (isBanned(connectionChannel.socket())) {
+				connectionChannel.close();
+			} else {
+				// Come out of the loop if the stop flag is set
+				if (this.stop) {
+					connectionChannel.close();
+					break;
+				}
+				eventLoop.register(connectionChannel);
+				this.counters.connectionAccepted();
+			}
+		}
+		eventLoop.shutdown();
+	}
+
+	/**
+	 * Checks whether the client of a new connection is banned. Accepting a
+	 * connection takes no token from the rate limiter, only the requests on
+	 * it do, so a client that opens a connection per request is held to the
+	 * same rate as one that reuses its connection.
+	 *
+	 * @param connectionSocket The socket of the connection.
+	 * @return <tt>true</tt> if the connection should be closed
+	 */
+	public boolean isBanned(Socket connectionSocket) {
+		if (blacklist.isBanned(connectionSocket.getInetAddress())) {
+			counters.rejected();
 			return true;
-		// Clear the request counter every second
-		long currentSecond = System.currentTimeMillis() / 1000L;
-		if (currentSecond > lastSecond) {
-			numRequest.clear();
-			lastSecond = currentSecond;
 		}
+		return false;
+	}
+
+	/**
+	 * Checks whether the client is making too many requests. This is called
+	 * for every request. A client that goes over the rate is banned for
+	 * {@link #BLACKLIST_TIME} milliseconds.
+	 *
+	 * @param connectionSocket The socket of the connection.
+	 * @return <tt>true</tt> if the connection should be closed
+	 */
+	public boolean DOSCheck(Socket connectionSocket) {
 		InetAddress ip = connectionSocket.getInetAddress();
-		// Increment request counter
-		if (numRequest.containsKey(ip)) {
-			Integer i = numRequest.get(ip) + 1;
-			numRequest.put(ip, i);
-			// If requests go over, put on blacklist
-			if (i >= REQUESTS_PER_SECOND_THREHOLD) {
-				blacklist.put(ip.getHostAddress(), System.currentTimeMillis()
-						+ BLACKLIST_TIME);
-				return true;
-			}
-		} else {
-			numRequest.put(ip, 1);
+		if (blacklist.isBanned(ip)) {
+			counters.rejected();
+			return true;
+		}
+		// If requests go over, put on blacklist
+		if (!rateLimiter.tryAcquire(ip)) {
+			blacklist.ban(ip, BLACKLIST_TIME);
+			counters.rejected();
+			return true;
 		}
 		return false;
 	}
@@ -292,18 +579,35 @@ public class Server implements Runnable {
 			// This will force welcomeSocket to come out of the blocked accept()
 			// method
 			// in the main loop of the start() method
-			Socket socket = new Socket(InetAddress.getLocalHost(), port);
+			int localPort = getLocalPort();
+			Socket socket = new Socket(InetAddress.getLocalHost(),
+					localPort > 0 ? localPort : port);
 
 			// We do not have any other job for this socket so just close it
 			socket.close();
 		} catch (Exception e) {
-			FileWriter fstream;
-			try {
-				fstream = new FileWriter(this.log.getAbsolutePath());
-				BufferedWriter out = new BufferedWriter(fstream);
-				out.write(e.toString());
-			} catch (IOException e1) {
-				e1.printStackTrace();
+			logError(e);
+		}
+	}
+
+	/**
+	 * Adds an error to the end of the server log.
+	 */
+	private void logError(Exception e) {
+		FileWriter out = null;
+		try {
+			out = new FileWriter(this.log, true);
+			out.write(GMTConversion.toGMTString(System.currentTimeMillis())
+					+ " " + e + System.lineSeparator());
+		} catch (IOException e1) {
+			e1.printStackTrace();
+		} finally {
+			if (out != null) {
+				try {
+					out.close();
+				} catch (IOException e1) {
+					e1.printStackTrace();
+				}
 			}
 		}
 	}
@@ -29,53 +29,605 @@
 package server;
 
 import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.Iterator;
 import java.util.LinkedHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPOutputStream;
+
+import protocol.HttpResponseFactory;
+import protocol.Protocol;
 
 /**
- * A cache of files from the server. By reading frequently requested files from memory rather than the hard drive, performance will increase. Uses LRU algorithm.
+ * A cache of files from the server. By reading frequently requested files from memory rather than the hard drive, performance will increase.
+ * <p>
+ * The cache holds at most a fixed number of bytes. With the {@link Policy#TINY_LFU} policy it is split into a small LRU window
+ * (1% of the bytes) that takes every new file, and a main area for the rest. A file pushed out of the window only gets into the
+ * main area if it has been requested more often than the file it would evict there, according to a {@link FrequencySketch}.
+ * A scan over many cold files therefore churns the window but leaves the popular files alone. The main area is a segmented
+ * LRU: files enter on probation and are promoted to the protected segment on their next hit.
+ * <p>
+ * The {@link Policy#LRU} policy is a plain LRU over the whole budget, as the cache used to be, so both can be compared
+ * with {@link #getHitCount()} and {@link #getMissCount()}.
+ * <p>
+ * The cache is shared by all connection threads. Looking a file up takes no lock. A hit is only recorded in a striped
+ * {@link ReadBuffer}, and the LRU bookkeeping catches up with the recorded hits whenever some thread gets hold of the
+ * eviction lock. Misses take the lock to insert the new file, after the file has been read.
+ * <p>
+ * Files larger than {@link #MAX_FILE_LENGTH} are not kept on the heap. They go to a second tier, the {@link MappedFileCache},
+ * which maps them into memory outside the heap with a budget of its own.
+ * <p>
+ * Text files can also be held compressed with gzip or deflate, each coding as an entry of its own next to the file as it is,
+ * so a file is compressed once rather than for every request. A precompressed <tt>.gz</tt> sidecar is used for gzip if it is
+ * at least as new as the file.
+ * <p>
+ * The cache does not look at a file again once it holds it. It relies on a {@link FileWatcher} to report changed files.
  * @author Trevor Krenz
  */
-public class ServerCache {
-	private int maxNumFiles;
-	private LinkedHashMap<String, byte[]> cache;
-	
-	public ServerCache(int maxNumFiles){
-		this.maxNumFiles = maxNumFiles;
-		this.cache = new LinkedHashMap<String, byte[]>();
-	}
-	public InputStream get(File file){
-		String path = file.getAbsolutePath();
-		byte[] data = cache.get(path);
-		if(data != null){
+public class ServerCache implements FileChangeListener {
+	/**
+	 * The largest file that is kept on the heap.
+	 */
+	public static final long MAX_FILE_LENGTH = 1024 * 1024;
+	
+	/**
+	 * The ways the cache can choose which files to keep.
+	 */
+	public enum Policy {
+		LRU, TINY_LFU
+	}
+	
+	private static final int WINDOW = 0;
+	private static final int PROBATION = 1;
+	private static final int PROTECTED = 2;
+	private static final int REMOVED = 3;
+	
+	/**
+	 * Roughly how large an average file is, to size the frequency sketch.
+	 */
+	private static final int AVERAGE_FILE_LENGTH = 8192;
+	
+	/**
+	 * Separates the path of a file from the content coding in the keys of compressed variants.
+	 */
+	private static final char VARIANT_SEPARATOR = '\0';
+	
+	/**
+	 * Files shorter than this are not worth compressing.
+	 */
+	private static final long MIN_COMPRESS_LENGTH = 256;
+	
+	/**
+	 * The suffix of a precompressed copy of a file that is served instead of compressing the file.
+	 */
+	private static final String SIDECAR_SUFFIX = ".gz";
+	
+	private static class Entry extends CachedFile {
+		private final String key;
+		//Guarded by the eviction lock
+		private int region;
+		
+		public Entry(String key, String path, byte[] data, long lastModified, String encoding, String etag){
+			super(path, data, lastModified, encoding, etag);
+			this.key = key;
+			this.region = WINDOW;
+		}
+	}
+	
+	private long maxBytes;
+	private long windowMaxBytes;
+	private long protectedMaxBytes;
+	private Policy policy;
+	
+	private ConcurrentHashMap<String, Entry> entries;
+	//Counts reported changes, so a miss can tell whether one happened while it read the file
+	private AtomicLong changes;
+	private ReadBuffer<Entry> readBuffer;
+	private ReentrantLock evictionLock;
+	private Consumer<Entry> hitReplayer;
+	
+	//Guarded by the eviction lock
+	private LinkedHashMap<String, Entry> window;
+	private LinkedHashMap<String, Entry> probation;
+	private LinkedHashMap<String, Entry> protectedArea;
+	private long windowBytes;
+	private long probationBytes;
+	private long protectedBytes;
+	private volatile long size;
+	private FrequencySketch sketch;
+	private MappedFileCache mapped;
+	
+	private LongAdder hits;
+	private LongAdder misses;
+	private LongAdder evictions;
+	
+	/**
+	 * @param maxBytes The most bytes of file contents to hold on the heap.
+	 * @param policy The policy for choosing which files to keep on the heap.
+	 * @param mappedBytes The most bytes of large files to keep memory-mapped, or 0 to not map files at all.
+	 */
+	public ServerCache(long maxBytes, Policy policy, long mappedBytes){
+		this.maxBytes = maxBytes;
+		this.policy = policy;
+		if(policy == Policy.LRU){
+			// Everything lives in the window and nothing gets past it
+			this.windowMaxBytes = maxBytes;
+		} else {
+			this.windowMaxBytes = maxBytes / 100;
+		}
+		this.protectedMaxBytes = (maxBytes - this.windowMaxBytes) * 4 / 5;
+		this.entries = new ConcurrentHashMap<String, Entry>();
+		this.changes = new AtomicLong();
+		this.readBuffer = new ReadBuffer<Entry>();
+		this.evictionLock = new ReentrantLock();
+		this.hitReplayer = new Consumer<Entry>() {
+			public void accept(Entry entry) {
+				if(entry.region != REMOVED){
+					sketch.increment(entry.key);
+					onHit(entry);
+				}
+			}
+		};
+		this.hits = new LongAdder();
+		this.misses = new LongAdder();
+		this.evictions = new LongAdder();
+		this.window = new LinkedHashMap<String, Entry>(16, 0.75f, true);
+		this.probation = new LinkedHashMap<String, Entry>(16, 0.75f, true);
+		this.protectedArea = new LinkedHashMap<String, Entry>(16, 0.75f, true);
+		this.sketch = new FrequencySketch((int) Math.min(1 << 20, maxBytes / AVERAGE_FILE_LENGTH));
+		if(mappedBytes > 0){
+			this.mapped = new MappedFileCache(mappedBytes);
+		}
+	}
+	
+	/**
+	 * Gets the contents of the file as a stream, from memory if possible.
+	 * @param file The file to read.
+	 * @return A stream of the file contents.
+	 * @throws FileNotFoundException If the file cannot be read.
+	 */
+	public InputStream get(File file) throws FileNotFoundException {
+		CachedFile cached = getFile(file);
+		if(cached == null){
+			return new FileInputStream(file);
+		}
+		return new ByteArrayInputStream(cached.data);
+	}
+	
+	/**
+	 * Gets the contents of the file as a read-only buffer that can be written to a channel without copying it.
+	 * Large files come from the memory-mapped tier.
+	 * @param file The file to read.
+	 * @return The file contents, or <tt>null</tt> if the file is too large to be cached or cannot be read.
+	 */
+	public ByteBuffer getBuffer(File file){
+		CachedFile cached = getFile(file);
+		if(cached != null){
+			return cached.getBody();
+		}
+		if(this.mapped != null && file.length() > MAX_FILE_LENGTH){
+			return this.mapped.get(file);
+		}
+		return null;
+	}
+	
+	/**
+	 * Gets the file from the heap tier, reading it into the cache if needed.
+	 * @param file The file to read.
+	 * @return The cached file, or <tt>null</tt> if the file is too large for the heap or cannot be read.
+	 */
+	public CachedFile getFile(File file){
+		return getFile(file, null);
+	}
+	
+	/**
+	 * Gets the file from the heap tier if it is there, without reading it otherwise.
+	 * @param file The file.
+	 * @return The cached file, or <tt>null</tt> if the heap tier does not hold it.
+	 */
+	public CachedFile getFileIfPresent(File file){
+		return getFileIfPresent(file, null);
+	}
+	
+	/**
+	 * Gets the file in a content coding from the heap tier if it is there, without reading or compressing it
+	 * otherwise.
+	 * @param file The file.
+	 * @param encoding {@link Protocol#GZIP}, {@link Protocol#DEFLATE}, or <tt>null</tt> for the file as it is.
+	 * @return The cached file, or <tt>null</tt> if the heap tier does not hold it.
+	 */
+	public CachedFile getFileIfPresent(File file, String encoding){
+		String path = FileWatcher.pathOf(file);
+		Entry entry = this.entries.get(encoding == null ? path : path + VARIANT_SEPARATOR + encoding);
+		if(entry != null){
+			this.hits.increment();
+			if(this.readBuffer.offer(entry)){
+				tryDrainReadBuffer();
+			}
+		}
+		return entry;
+	}
+	
+	/**
+	 * Gets the file compressed with a content coding from the heap tier, compressing it if needed. Each coding
+	 * of a file is cached as an entry of its own. For gzip, a newer <tt>.gz</tt> file next to the file is used
+	 * as it is instead of compressing the file.
+	 * @param file The file to read.
+	 * @param encoding {@link Protocol#GZIP}, {@link Protocol#DEFLATE}, or <tt>null</tt> for the file as it is.
+	 * @return The cached file, or <tt>null</tt> if the file is too large for the heap or cannot be read.
+	 */
+	public CachedFile getFile(File file, String encoding){
+		String path = FileWatcher.pathOf(file);
+		String key = encoding == null ? path : path + VARIANT_SEPARATOR + encoding;
+		Entry entry = this.entries.get(key);
+		if(entry != null){
 			//Cache hit...
-			//Move the file to the end of the queue
-			cache.remove(path);
-			cache.put(path,data);
-			//Return the input stream of the data
-			return new ByteArrayInputStream(data);
+			this.hits.increment();
+			if(this.readBuffer.offer(entry)){
+				tryDrainReadBuffer();
+			}
+			return entry;
 		}
 		//Cache miss...
+		long length = file.length();
+		if(length > MAX_FILE_LENGTH){
+			//Not for this tier
+			return null;
+		}
+		this.misses.increment();
+		//A change reported while the file is being read may or may not be in what was read
+		long changes = this.changes.get();
+		//Look at the time before reading, so a change while reading makes the entry look older, not newer
+		long lastModified = file.lastModified();
+		byte[] data;
 		try {
-			FileInputStream fileInStream = new FileInputStream(file);
-			data = new byte[(int) file.length()];
-			fileInStream.read(data);
-			if(cache.size() >= maxNumFiles)
-			{
-				//Remove the file at head of queue
-				cache.remove(cache.keySet().iterator().next());
+			if(encoding == null){
+				data = readFully(file, (int) length);
+			} else {
+				data = readEncoded(file, (int) length, lastModified, encoding);
 			}
-			//Put new file in end of queue
-			cache.put(path, data);
-		} catch (FileNotFoundException e) {
-			e.printStackTrace();
 		} catch (IOException e) {
 			e.printStackTrace();
+			return null;
+		}
+		String etag = HttpResponseFactory.createETag(lastModified, length, encoding);
+		entry = new Entry(key, path, data, lastModified, encoding, etag);
+		if(data.length <= this.maxBytes){
+			this.evictionLock.lock();
+			try {
+				this.readBuffer.drain(this.hitReplayer);
+				this.sketch.increment(key);
+				//Another thread may have read the same file meanwhile, and if the file changed meanwhile what
+				//was read may be out of date already and must not outlive this request
+				if(this.changes.get() == changes && !this.entries.containsKey(key)){
+					add(entry);
+					this.size = this.windowBytes + this.probationBytes + this.protectedBytes;
+				}
+			} finally {
+				this.evictionLock.unlock();
+			}
+		}
+		return entry;
+	}
+	
+	/**
+	 * Checks whether a file is worth compressing at all.
+	 * @param fileName The name of the file.
+	 * @param length The length of the file.
+	 * @return <tt>true</tt> if the file is text and not too small or too large for compressing it to pay off
+	 */
+	public static boolean isCompressible(String fileName, long length){
+		return length >= MIN_COMPRESS_LENGTH && length <= MAX_FILE_LENGTH 
+				&& HttpResponseFactory.isCompressible(fileName);
+	}
+	
+	/**
+	 * Reads the file in the content coding, from its sidecar if there is an up to date one.
+	 */
+	private static byte[] readEncoded(File file, int length, long lastModified, String encoding) throws IOException {
+		if(Protocol.GZIP.equals(encoding)){
+			File sidecar = new File(file.getPath() + SIDECAR_SUFFIX);
+			long sidecarLength = sidecar.length();
+			if(sidecarLength > 0 && sidecarLength <= MAX_FILE_LENGTH && sidecar.lastModified() >= lastModified){
+				return readFully(sidecar, (int) sidecarLength);
+			}
+		}
+		byte[] data = readFully(file, length);
+		ByteArrayOutputStream compressed = new ByteArrayOutputStream(length / 2);
+		if(Protocol.GZIP.equals(encoding)){
+			//Compress as hard as we can, it only happens once per file
+			GZIPOutputStream out = new GZIPOutputStream(compressed){
+				{
+					def.setLevel(Deflater.BEST_COMPRESSION);
+				}
+			};
+			out.write(data);
+			out.close();
+		} else {
+			Deflater deflater = new Deflater(Deflater.BEST_COMPRESSION);
+			try {
+				DeflaterOutputStream out = new DeflaterOutputStream(compressed, deflater);
+				out.write(data);
+				out.close();
+			} finally {
+				deflater.end();
+			}
+		}
+		return compressed.toByteArray();
+	}
+	
+	/**
+	 * Replays the recorded hits, unless another thread is busy with the LRU bookkeeping already.
+	 */
+	private void tryDrainReadBuffer(){
+		if(this.evictionLock.tryLock()){
+			try {
+				this.readBuffer.drain(this.hitReplayer);
+			} finally {
+				this.evictionLock.unlock();
+			}
+		}
+	}
+	
+	/**
+	 * Moves the entry to the most recently used end of its area, promoting it out of probation.
+	 */
+	private void onHit(Entry entry){
+		if(entry.region == WINDOW){
+			this.window.get(entry.key);
+		} else if(entry.region == PROTECTED){
+			this.protectedArea.get(entry.key);
+		} else {
+			this.probation.remove(entry.key);
+			this.probationBytes -= entry.data.length;
+			entry.region = PROTECTED;
+			this.protectedArea.put(entry.key, entry);
+			this.protectedBytes += entry.data.length;
+			//Demote the least recently used protected files if protected got too big
+			Iterator<Entry> i = this.protectedArea.values().iterator();
+			while(this.protectedBytes > this.protectedMaxBytes && i.hasNext()){
+				Entry demoted = i.next();
+				if(demoted == entry){
+					break;
+				}
+				i.remove();
+				this.protectedBytes -= demoted.data.length;
+				demoted.region = PROBATION;
+				this.probation.put(demoted.key, demoted);
+				this.probationBytes += demoted.data.length;
+			}
 		}
-		return new ByteArrayInputStream(data);
+	}
+	
+	/**
+	 * Puts a new file in the window, then moves whatever does not fit in the window towards the main area.
+	 * A file larger than the whole window goes straight on to the main area.
+	 */
+	private void add(Entry entry){
+		this.entries.put(entry.key, entry);
+		this.window.put(entry.key, entry);
+		this.windowBytes += entry.data.length;
+		Iterator<Entry> i = this.window.values().iterator();
+		while(this.windowBytes > this.windowMaxBytes && i.hasNext()){
+			Entry candidate = i.next();
+			i.remove();
+			this.windowBytes -= candidate.data.length;
+			admit(candidate);
+		}
+	}
+	
+	/**
+	 * Lets a file that was pushed out of the window into probation if it is more popular than the files it would evict.
+	 */
+	private void admit(Entry candidate){
+		long mainMaxBytes = this.maxBytes - this.windowMaxBytes;
+		int candidateFrequency = this.sketch.frequency(candidate.key);
+		if(candidate.data.length > mainMaxBytes){
+			remove(candidate);
+			return;
+		}
+		while(this.probationBytes + this.protectedBytes + candidate.data.length > mainMaxBytes){
+			Entry victim = eldest(this.probation);
+			if(victim == null){
+				victim = eldest(this.protectedArea);
+			}
+			if(victim == null || candidateFrequency <= this.sketch.frequency(victim.key)){
+				//The candidate loses
+				remove(candidate);
+				return;
+			}
+			evict(victim);
+		}
+		candidate.region = PROBATION;
+		this.probation.put(candidate.key, candidate);
+		this.probationBytes += candidate.data.length;
+	}
+	
+	private void evict(Entry victim){
+		unlink(victim);
+		remove(victim);
+	}
+	
+	/**
+	 * Takes the entry out of whichever area it is in.
+	 */
+	private void unlink(Entry entry){
+		if(entry.region == WINDOW){
+			this.window.remove(entry.key);
+			this.windowBytes -= entry.data.length;
+		} else if(entry.region == PROBATION){
+			this.probation.remove(entry.key);
+			this.probationBytes -= entry.data.length;
+		} else if(entry.region == PROTECTED){
+			this.protectedArea.remove(entry.key);
+			this.protectedBytes -= entry.data.length;
+		}
+	}
+	
+	private void remove(Entry entry){
+		discard(entry);
+		this.evictions.increment();
+	}
+	
+	private void discard(Entry entry){
+		entry.region = REMOVED;
+		this.entries.remove(entry.key, entry);
+	}
+	
+	private void discard(String key){
+		Entry entry = this.entries.get(key);
+		if(entry != null){
+			unlink(entry);
+			discard(entry);
+		}
+	}
+	
+	/**
+	 * Drops the cached contents of a file that changed, or of every file below a directory that is gone.
+	 * @param path The absolute path of the file.
+	 */
+	public void fileChanged(String path){
+		if(this.mapped != null){
+			this.mapped.fileChanged(path);
+		}
+		this.evictionLock.lock();
+		try {
+			this.changes.incrementAndGet();
+			this.readBuffer.drain(this.hitReplayer);
+			discard(path);
+			discard(path + VARIANT_SEPARATOR + Protocol.GZIP);
+			discard(path + VARIANT_SEPARATOR + Protocol.DEFLATE);
+			if(path.endsWith(SIDECAR_SUFFIX)){
+				//The gzip variant of the file may have come from this sidecar
+				String original = path.substring(0, path.length() - SIDECAR_SUFFIX.length());
+				discard(original + VARIANT_SEPARATOR + Protocol.GZIP);
+			}
+			if(!new File(path).exists()){
+				String prefix = path + File.separator;
+				for(Entry child : this.entries.values()){
+					if(child.key.startsWith(prefix)){
+						unlink(child);
+						discard(child);
+					}
+				}
+			}
+			this.size = this.windowBytes + this.probationBytes + this.protectedBytes;
+		} finally {
+			this.evictionLock.unlock();
+		}
+	}
+	
+	/**
+	 * Drops the cached contents of every file.
+	 */
+	public void allFilesChanged(){
+		if(this.mapped != null){
+			this.mapped.allFilesChanged();
+		}
+		this.evictionLock.lock();
+		try {
+			this.changes.incrementAndGet();
+			this.readBuffer.drain(this.hitReplayer);
+			for(Entry entry : this.entries.values()){
+				unlink(entry);
+				discard(entry);
+			}
+			this.size = 0;
+		} finally {
+			this.evictionLock.unlock();
+		}
+	}
+	
+	private static Entry eldest(LinkedHashMap<String, Entry> area){
+		Iterator<Entry> i = area.values().iterator();
+		return i.hasNext() ? i.next() : null;
+	}
+	
+	private static byte[] readFully(File file, int length) throws IOException {
+		FileInputStream fileInStream = new FileInputStream(file);
+		try {
+			byte[] data = new byte[length];
+			int offset = 0;
+			while(offset < length){
+				int bytesRead = fileInStream.read(data, offset, length - offset);
+				if(bytesRead == -1){
+					throw new IOException("File changed while reading: " + file);
+				}
+				offset += bytesRead;
+			}
+			return data;
+		} finally {
+			fileInStream.close();
+		}
+	}
+	
+	/**
+	 * @return the policy used to choose which files to keep
+	 */
+	public Policy getPolicy(){
+		return this.policy;
+	}
+	
+	/**
+	 * @return the most bytes of file contents the cache holds
+	 */
+	public long getMaxBytes(){
+		return this.maxBytes;
+	}
+	
+	/**
+	 * @return the bytes of file contents held right now
+	 */
+	public long getSize(){
+		return this.size;
+	}
+	
+	/**
+	 * @return the tier for large files, or <tt>null</tt> if large files are not mapped
+	 */
+	public MappedFileCache getMappedTier(){
+		return this.mapped;
+	}
+	
+	/**
+	 * @return the number of requests served from the heap
+	 */
+	public long getHitCount(){
+		return this.hits.sum();
+	}
+	
+	/**
+	 * @return the number of requests for files small enough for the heap that had to go to the file system
+	 */
+	public long getMissCount(){
+		return this.misses.sum();
+	}
+	
+	/**
+	 * @return the number of files evicted or refused by the admission policy
+	 */
+	public long getEvictionCount(){
+		return this.evictions.sum();
+	}
+	
+	/**
+	 * @return the share of requests for small files served from the heap, between 0 and 1
+	 */
+	public double getHitRate(){
+		long hits = this.hits.sum();
+		long requests = hits + this.misses.sum();
+		return requests == 0 ? 0 : hits / (double) requests;
 	}
 }
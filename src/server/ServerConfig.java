@@ -0,0 +1,277 @@
+/*
+ * ServerConfig.java
+ * Oct 17, 2026
+ *
+ * Simple Web Server (SWS) for CSSE 477
+ *
+ * Copyright (C) 2012 Chandan Raj Rupakheti
+ *
+ * This program is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation, either
+ * version 3 of the License, or any later version.
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/lgpl.html>.
+ *
+ */
+
+package server;
+
+import java.io.File;
+
+import protocol.Protocol;
+
+/**
+ * Startup options for the {@link Server}. Every option is read from a system
+ * property so that it can be given on the command line, e.g.
+ * <tt>java -Dsws.mode=eventloop gui.WebServer</tt>. Options that are missing
+ * or cannot be parsed fall back to their defaults.
+ */
+public class ServerConfig {
+	public static final String MODE = "sws.mode";
+	public static final String SELECTOR_THREADS = "sws.selectors";
+	public static final String WORKER_THREADS = "sws.workers";
+	public static final String QUEUE_DEPTH = "sws.queue";
+	public static final String RETRY_AFTER = "sws.retryAfter";
+	public static final String CACHE_BYTES = "sws.cache.bytes";
+	public static final String CACHE_POLICY = "sws.cache.policy";
+	public static final String MAPPED_CACHE_BYTES = "sws.cache.mappedBytes";
+	public static final String RATE = "sws.rate";
+	public static final String BURST = "sws.burst";
+	public static final String ACCESS_RULES = "sws.accessRules";
+	public static final String STATUS_URI = "sws.statusUri";
+	public static final String ACCESS_LOG = "sws.accessLog";
+	public static final String ACCESS_LOG_BYTES = "sws.accessLog.maxBytes";
+	public static final String ACCESS_LOG_FILES = "sws.accessLog.files";
+	public static final String ACCESS_LOG_BUFFER = "sws.accessLog.buffer";
+
+	private static final int DEFAULT_WORKER_THREADS = 100;
+	private static final int DEFAULT_QUEUE_DEPTH = 100;
+	private static final long DEFAULT_CACHE_BYTES = 64L * 1024 * 1024;
+	private static final long DEFAULT_MAPPED_CACHE_BYTES = 1024L * 1024 * 1024;
+	private static final int DEFAULT_RATE = 100;
+	private static final String DEFAULT_ACCESS_LOG = "access.log";
+	private static final long DEFAULT_ACCESS_LOG_BYTES = 64L * 1024 * 1024;
+	private static final int DEFAULT_ACCESS_LOG_FILES = 5;
+	private static final int DEFAULT_ACCESS_LOG_BUFFER = 16384;
+
+	/**
+	 * Gets the way connections should be serviced.
+	 *
+	 * @return the execution mode, {@link ExecutionMode#THREAD_PER_CONNECTION}
+	 *         by default
+	 */
+	public static ExecutionMode getExecutionMode() {
+		String name = System.getProperty(MODE);
+		if (name != null) {
+			ExecutionMode mode = ExecutionMode.fromName(name.trim());
+			if (mode != null)
+				return mode;
+		}
+		return ExecutionMode.THREAD_PER_CONNECTION;
+	}
+
+	/**
+	 * Gets the number of selector threads used by the {@link EventLoop}.
+	 *
+	 * @return the number of selector threads, one per core by default
+	 */
+	public static int getSelectorThreads() {
+		return getPositiveInt(SELECTOR_THREADS, Runtime.getRuntime()
+				.availableProcessors());
+	}
+
+	/**
+	 * Gets the number of threads in the {@link WorkerPool}, or of the threads
+	 * the {@link EventLoop} reads files with.
+	 *
+	 * @return the number of worker threads
+	 */
+	public static int getWorkerThreads() {
+		return getPositiveInt(WORKER_THREADS, DEFAULT_WORKER_THREADS);
+	}
+
+	/**
+	 * Gets the number of connections that may wait for a worker before new
+	 * ones are rejected.
+	 *
+	 * @return the queue depth of the {@link WorkerPool}
+	 */
+	public static int getQueueDepth() {
+		return getPositiveInt(QUEUE_DEPTH, DEFAULT_QUEUE_DEPTH);
+	}
+
+	/**
+	 * Gets the number of seconds a rejected client is asked to wait.
+	 *
+	 * @return the value of the Retry-After header
+	 */
+	public static int getRetryAfter() {
+		return getPositiveInt(RETRY_AFTER, Protocol.RETRY_AFTER_SECONDS);
+	}
+
+	/**
+	 * Gets the most bytes of file contents the {@link ServerCache} may hold.
+	 *
+	 * @return the cache budget in bytes, 64 MB by default
+	 */
+	public static long getCacheBytes() {
+		return getPositiveLong(CACHE_BYTES, DEFAULT_CACHE_BYTES);
+	}
+
+	/**
+	 * Gets the most bytes of large files the {@link MappedFileCache} may keep
+	 * mapped. A value of 0 turns the mapped tier off.
+	 *
+	 * @return the mapped tier budget in bytes, 1 GB by default
+	 */
+	public static long getMappedCacheBytes() {
+		Long value = Long.getLong(MAPPED_CACHE_BYTES);
+		if (value == null || value < 0)
+			return DEFAULT_MAPPED_CACHE_BYTES;
+		return value;
+	}
+
+	/**
+	 * Gets the policy the {@link ServerCache} uses to choose which files to
+	 * keep, either "lru" or "tinylfu".
+	 *
+	 * @return the cache policy, {@link ServerCache.Policy#TINY_LFU} by
+	 *         default
+	 */
+	public static ServerCache.Policy getCachePolicy() {
+		String name = System.getProperty(CACHE_POLICY);
+		if ("lru".equalsIgnoreCase(name))
+			return ServerCache.Policy.LRU;
+		return ServerCache.Policy.TINY_LFU;
+	}
+
+	/**
+	 * Gets the requests per second a client address may make on average
+	 * before the {@link RateLimiter} refuses it.
+	 *
+	 * @return the rate, 100 by default
+	 */
+	public static int getRate() {
+		return getPositiveInt(RATE, DEFAULT_RATE);
+	}
+
+	/**
+	 * Gets the requests a client address may make at once after it has been
+	 * quiet for a while.
+	 *
+	 * @return the burst, as many as the rate allows in a second by default
+	 */
+	public static int getBurst() {
+		return getPositiveInt(BURST, getRate());
+	}
+
+	/**
+	 * Gets the file the {@link AccessRules} are read from. It is read again
+	 * whenever it changes.
+	 *
+	 * @return the rules file, or <tt>null</tt> to use
+	 *         {@link AccessRules#DEFAULT_RULES}
+	 */
+	public static File getAccessRulesFile() {
+		String name = System.getProperty(ACCESS_RULES);
+		if (name == null || name.trim().isEmpty())
+			return null;
+		return new File(name.trim());
+	}
+
+	/**
+	 * Gets the URI the {@link ServerStatus} page is served at, e.g.
+	 * <tt>/server-status</tt>. Anyone who can reach the server can read the
+	 * page unless the access rules deny its URI, so it is off unless a URI
+	 * is given.
+	 *
+	 * @return the URI, or <tt>null</tt> if there is no status page
+	 */
+	public static String getStatusUri() {
+		String uri = System.getProperty(STATUS_URI);
+		if (uri == null)
+			return null;
+		uri = uri.trim();
+		return uri.isEmpty() ? null : uri;
+	}
+
+	/**
+	 * Gets the file the {@link AccessLog} writes to. An empty value turns the
+	 * access log off.
+	 *
+	 * @return the log file, <tt>access.log</tt> by default, or <tt>null</tt>
+	 *         if there is no access log
+	 */
+	public static File getAccessLogFile() {
+		String name = System.getProperty(ACCESS_LOG);
+		if (name == null)
+			return new File(DEFAULT_ACCESS_LOG);
+		name = name.trim();
+		return name.isEmpty() ? null : new File(name);
+	}
+
+	/**
+	 * Gets the size at which the access log is moved aside and a new one is
+	 * started.
+	 *
+	 * @return the size in bytes, 64 MB by default
+	 */
+	public static long getAccessLogBytes() {
+		return getPositiveLong(ACCESS_LOG_BYTES, DEFAULT_ACCESS_LOG_BYTES);
+	}
+
+	/**
+	 * Gets the number of old access logs to keep. A value of 0 keeps none.
+	 *
+	 * @return the number of files, 5 by default
+	 */
+	public static int getAccessLogFiles() {
+		Integer value = Integer.getInteger(ACCESS_LOG_FILES);
+		if (value == null || value < 0)
+			return DEFAULT_ACCESS_LOG_FILES;
+		return value;
+	}
+
+	/**
+	 * Gets the number of records the {@link AccessLog} can hold before it is
+	 * written. Records that do not fit are dropped.
+	 *
+	 * @return the number of records, 16384 by default
+	 */
+	public static int getAccessLogBuffer() {
+		return getPositiveInt(ACCESS_LOG_BUFFER, DEFAULT_ACCESS_LOG_BUFFER);
+	}
+
+	/**
+	 * Reads a positive integer system property.
+	 *
+	 * @param property The name of the property.
+	 * @param defaultValue The value to use if the property is not usable.
+	 * @return the value of the property
+	 */
+	static int getPositiveInt(String property, int defaultValue) {
+		Integer value = Integer.getInteger(property);
+		if (value == null || value <= 0)
+			return defaultValue;
+		return value;
+	}
+
+	/**
+	 * Reads a positive long system property.
+	 *
+	 * @param property The name of the property.
+	 * @param defaultValue The value to use if the property is not usable.
+	 * @return the value of the property
+	 */
+	static long getPositiveLong(String property, long defaultValue) {
+		Long value = Long.getLong(property);
+		if (value == null || value <= 0)
+			return defaultValue;
+		return value;
+	}
+}
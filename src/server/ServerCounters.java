@@ -0,0 +1,185 @@
+/*
+ * ServerCounters.java
+ * Oct 17, 2026
+ *
+ * Simple Web Server (SWS) for CSSE 477
+ *
+ * Copyright (C) 2012 Chandan Raj Rupakheti
+ *
+ * This program is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation, either
+ * version 3 of the License, or any later version.
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/lgpl.html>.
+ *
+ */
+
+
+package server;
+
+import java.util.concurrent.atomic.LongAdder;
+
+import protocol.HttpResponse;
+
+/**
+ * Counts what the server does: connections, requests, bytes sent, cache hits
+ * and misses, rejections and requests that reused a kept-alive connection.
+ * Every counter is a {@link LongAdder}, which spreads concurrent updates
+ * over cells of its own, so connection threads never wait for each other to
+ * count.
+ * <p>
+ * A {@link Snapshot} reads all counters without stopping anyone from
+ * counting. A request updates its counters in a fixed order: request, then
+ * reuse and cache, then bytes. The snapshot reads them in the reverse
+ * order, so it never shows, for example, more cache hits or reuses than
+ * requests, even though requests are answered while it is taken.
+ */
+public class ServerCounters {
+	/**
+	 * The counters at one moment.
+	 */
+	public static class Snapshot {
+		private final long bytesSent;
+		private final long cacheHits;
+		private final long cacheMisses;
+		private final long keepAliveReuses;
+		private final long requests;
+		private final long rejections;
+		private final long connections;
+
+		private Snapshot(ServerCounters counters) {
+			// In the reverse order of the updates, see the class comment
+			this.bytesSent = counters.bytesSent.sum();
+			this.cacheHits = counters.cacheHits.sum();
+			this.cacheMisses = counters.cacheMisses.sum();
+			this.keepAliveReuses = counters.keepAliveReuses.sum();
+			this.requests = counters.requests.sum();
+			this.rejections = counters.rejections.sum();
+			this.connections = counters.connections.sum();
+		}
+
+		/**
+		 * @return the number of connections taken on by a handler
+		 */
+		public long getConnections() {
+			return this.connections;
+		}
+
+		/**
+		 * @return the number of requests answered
+		 */
+		public long getRequests() {
+			return this.requests;
+		}
+
+		/**
+		 * @return the number of requests that came in on a connection that
+		 *         had been used for an earlier request
+		 */
+		public long getKeepAliveReuses() {
+			return this.keepAliveReuses;
+		}
+
+		/**
+		 * @return the number of bytes written to clients
+		 */
+		public long getBytesSent() {
+			return this.bytesSent;
+		}
+
+		/**
+		 * @return the number of responses whose body was in the cache
+		 */
+		public long getCacheHits() {
+			return this.cacheHits;
+		}
+
+		/**
+		 * @return the number of responses whose body had to be read into the
+		 *         cache
+		 */
+		public long getCacheMisses() {
+			return this.cacheMisses;
+		}
+
+		/**
+		 * @return the number of connections and requests turned away, for
+		 *         going over the rate, being banned, or finding the server
+		 *         too busy
+		 */
+		public long getRejections() {
+			return this.rejections;
+		}
+	}
+
+	private LongAdder connections;
+	private LongAdder requests;
+	private LongAdder keepAliveReuses;
+	private LongAdder bytesSent;
+	private LongAdder cacheHits;
+	private LongAdder cacheMisses;
+	private LongAdder rejections;
+
+	public ServerCounters() {
+		this.connections = new LongAdder();
+		this.requests = new LongAdder();
+		this.keepAliveReuses = new LongAdder();
+		this.bytesSent = new LongAdder();
+		this.cacheHits = new LongAdder();
+		this.cacheMisses = new LongAdder();
+		this.rejections = new LongAdder();
+	}
+
+	/**
+	 * Counts a connection that a handler took on.
+	 */
+	public void connectionAccepted() {
+		this.connections.increment();
+	}
+
+	/**
+	 * Counts a request that was answered.
+	 *
+	 * @param response The response to it.
+	 * @param reused <tt>true</tt> if an earlier request came in on the same
+	 *            connection
+	 */
+	public void requestAnswered(HttpResponse response, boolean reused) {
+		this.requests.increment();
+		if (reused)
+			this.keepAliveReuses.increment();
+		Boolean cacheHit = response.getCacheHit();
+		if (cacheHit != null)
+			(cacheHit ? this.cacheHits : this.cacheMisses).increment();
+	}
+
+	/**
+	 * Counts bytes written to a client.
+	 *
+	 * @param bytes The number of bytes.
+	 */
+	public void bytesSent(long bytes) {
+		this.bytesSent.add(bytes);
+	}
+
+	/**
+	 * Counts a connection or request that was turned away.
+	 */
+	public void rejected() {
+		this.rejections.increment();
+	}
+
+	/**
+	 * Reads all counters.
+	 *
+	 * @return the snapshot
+	 */
+	public Snapshot snapshot() {
+		return new Snapshot(this);
+	}
+}
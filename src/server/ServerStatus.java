@@ -0,0 +1,327 @@
+/*
+ * ServerStatus.java
+ * Oct 17, 2026
+ *
+ * Simple Web Server (SWS) for CSSE 477
+ *
+ * Copyright (C) 2012 Chandan Raj Rupakheti
+ *
+ * This program is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation, either
+ * version 3 of the License, or any later version.
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/lgpl.html>.
+ *
+ */
+
+
+package server;
+
+import java.lang.management.ManagementFactory;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+
+import protocol.Protocol;
+
+/**
+ * Renders what the server knows about itself for the status URI, in the
+ * Prometheus text format, so that a monitoring system can scrape it from a
+ * server without a screen.
+ * <p>
+ * The page shows the {@link ServerCounters}, the {@link LatencyRecorder}
+ * histograms, the caches, the worker pool and the rate limiter. Every figure
+ * comes from a counter or snapshot that is read without a lock, so a scrape
+ * costs the scraping thread some string building and never holds up
+ * requests.
+ */
+public class ServerStatus {
+	/**
+	 * The content type of the Prometheus text format.
+	 */
+	public static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+
+	/**
+	 * The upper bounds of the latency histogram buckets, in nanoseconds. They
+	 * are moved down onto the edges of the {@link LatencyHistogram} buckets,
+	 * by less than 6%, so the counts are exact; the labels give the edges.
+	 */
+	private static final long[] BOUNDS = { 100000L, 250000L, 500000L,
+			1000000L, 2500000L, 5000000L, 10000000L, 25000000L, 50000000L,
+			100000000L, 250000000L, 500000000L, 1000000000L, 2500000000L,
+			5000000000L, 10000000000L };
+	private static final String[] BOUND_LABELS = new String[BOUNDS.length];
+
+	static {
+		for (int i = 0; i < BOUNDS.length; i++) {
+			BOUNDS[i] = LatencyHistogram.edgeAtOrBelow(BOUNDS[i]);
+			BOUND_LABELS[i] = BigDecimal.valueOf(BOUNDS[i], 9)
+					.stripTrailingZeros().toPlainString();
+		}
+	}
+
+	private Server server;
+	private String uri;
+
+	/**
+	 * @param server The server to report on.
+	 * @param uri The URI the page is served at.
+	 */
+	public ServerStatus(Server server, String uri) {
+		this.server = server;
+		this.uri = uri;
+	}
+
+	/**
+	 * @return the URI the page is served at
+	 */
+	public String getUri() {
+		return this.uri;
+	}
+
+	/**
+	 * Checks whether a request is for the status page, with or without a
+	 * query.
+	 *
+	 * @param uri The URI of the request.
+	 * @return <tt>true</tt> if the page should be sent
+	 */
+	public boolean isStatusUri(String uri) {
+		return uri.startsWith(this.uri)
+				&& (uri.length() == this.uri.length() || uri.charAt(this.uri
+						.length()) == '?');
+	}
+
+	/**
+	 * Renders the page.
+	 *
+	 * @return the page, encoded in UTF-8
+	 */
+	public byte[] render() {
+		StringBuilder out = new StringBuilder(16384);
+		renderServer(out);
+		renderCounters(out);
+		renderLatencies(out);
+		renderCaches(out);
+		renderThreads(out);
+		renderLimits(out);
+		return out.toString().getBytes(StandardCharsets.UTF_8);
+	}
+
+	private void renderServer(StringBuilder out) {
+		header(out, "sws_info", "gauge", "The server version and how it services connections.");
+		out.append("sws_info{version=\"").append(escape(Protocol.SERVER_INFO))
+				.append("\",mode=\"")
+				.append(this.server.getExecutionMode().getName())
+				.append("\"} 1\n");
+		gauge(out, "process_start_time_seconds", "When the server process started.",
+				ManagementFactory.getRuntimeMXBean().getStartTime() / 1000.0);
+	}
+
+	private void renderCounters(StringBuilder out) {
+		ServerCounters.Snapshot counters = this.server.getCounters().snapshot();
+		counter(out, "sws_connections_total", "Connections taken on by a handler.",
+				counters.getConnections());
+		counter(out, "sws_requests_total", "Requests answered.",
+				counters.getRequests());
+		counter(out, "sws_keepalive_reuses_total",
+				"Requests that reused a kept-alive connection.",
+				counters.getKeepAliveReuses());
+		counter(out, "sws_sent_bytes_total", "Bytes written to clients.",
+				counters.getBytesSent());
+		counter(out, "sws_response_cache_hits_total",
+				"Responses whose body was in the cache.", counters.getCacheHits());
+		counter(out, "sws_response_cache_misses_total",
+				"Responses whose body had to be read into the cache.",
+				counters.getCacheMisses());
+		counter(out, "sws_rejections_total",
+				"Connections and requests turned away for load or rate.",
+				counters.getRejections());
+
+		AccessLog accessLog = this.server.getAccessLog();
+		if (accessLog != null) {
+			counter(out, "sws_access_log_records_total",
+					"Requests written to the access log.",
+					accessLog.getWrittenCount());
+			counter(out, "sws_access_log_dropped_total",
+					"Requests left out of the access log because it was behind.",
+					accessLog.getDroppedCount());
+		}
+	}
+
+	private void renderLatencies(StringBuilder out) {
+		LatencyRecorder latencies = this.server.getLatencies();
+		String help = "Time from parsing a request to having its response ready.";
+
+		header(out, "sws_request_duration_seconds", "histogram", help);
+		histogram(out, "sws_request_duration_seconds", null, null,
+				latencies.getAll().snapshot());
+
+		header(out, "sws_request_duration_by_status_seconds", "histogram", help);
+		for (Map.Entry<Integer, LatencyHistogram> entry : latencies
+				.getByStatus().entrySet()) {
+			histogram(out, "sws_request_duration_by_status_seconds", "status",
+					entry.getKey().toString(), entry.getValue().snapshot());
+		}
+
+		header(out, "sws_request_duration_by_cache_seconds", "histogram", help);
+		histogram(out, "sws_request_duration_by_cache_seconds", "cache", "hit",
+				latencies.getCacheHits().snapshot());
+		histogram(out, "sws_request_duration_by_cache_seconds", "cache", "miss",
+				latencies.getCacheMisses().snapshot());
+
+		header(out, "sws_request_duration_by_route_seconds", "histogram", help);
+		for (Map.Entry<String, LatencyHistogram> entry : latencies
+				.getByRoute().entrySet()) {
+			histogram(out, "sws_request_duration_by_route_seconds", "route",
+					entry.getKey(), entry.getValue().snapshot());
+		}
+	}
+
+	private void renderCaches(StringBuilder out) {
+		ServerCache cache = this.server.getServerCache();
+		gauge(out, "sws_cache_bytes", "Bytes of files held on the heap.",
+				cache.getSize());
+		gauge(out, "sws_cache_max_bytes", "The heap cache budget.",
+				cache.getMaxBytes());
+		counter(out, "sws_cache_hits_total", "Heap cache lookups that found the file.",
+				cache.getHitCount());
+		counter(out, "sws_cache_misses_total",
+				"Heap cache lookups that had to read the file.",
+				cache.getMissCount());
+		counter(out, "sws_cache_evictions_total",
+				"Files evicted from the heap cache.", cache.getEvictionCount());
+
+		MappedFileCache mapped = cache.getMappedTier();
+		if (mapped != null) {
+			gauge(out, "sws_mapped_cache_bytes", "Bytes of files kept mapped.",
+					mapped.getSize());
+			gauge(out, "sws_mapped_cache_max_bytes", "The mapped tier budget.",
+					mapped.getMaxBytes());
+			counter(out, "sws_mapped_cache_hits_total",
+					"Mapped tier lookups that found the file.", mapped.getHitCount());
+			counter(out, "sws_mapped_cache_misses_total",
+					"Mapped tier lookups that had to map the file.",
+					mapped.getMissCount());
+		}
+
+		PathResolver resolver = this.server.getPathResolver();
+		gauge(out, "sws_resolved_paths", "Request URIs whose resolution is cached.",
+				resolver.getSize());
+		counter(out, "sws_path_resolver_hits_total",
+				"Requests resolved without asking the file system.",
+				resolver.getHitCount());
+		counter(out, "sws_path_resolver_misses_total",
+				"Requests that had to ask the file system.",
+				resolver.getMissCount());
+		gauge(out, "sws_access_rules", "Access rules in use.",
+				resolver.getAccessRules().getRuleCount());
+	}
+
+	private void renderThreads(StringBuilder out) {
+		gauge(out, "jvm_threads_current", "Live threads in the server process.",
+				ManagementFactory.getThreadMXBean().getThreadCount());
+
+		WorkerPool pool = this.server.getWorkerPool();
+		if (pool != null) {
+			gauge(out, "sws_worker_pool_queue_depth",
+					"Connections waiting for a worker.", pool.getQueueDepth());
+			gauge(out, "sws_worker_pool_active_workers",
+					"Workers handling a connection.", pool.getActiveWorkers());
+			counter(out, "sws_worker_pool_rejections_total",
+					"Connections turned away with a 503.", pool.getRejectedCount());
+			gauge(out, "sws_worker_pool_queue_wait_seconds",
+					"Average time a connection waited for a worker.",
+					pool.getAverageQueueWait() / 1000);
+		}
+		if (this.server.getExecutionMode() == ExecutionMode.VIRTUAL_THREAD)
+			counter(out, "sws_virtual_thread_pinned_total",
+					"Times a handler pinned its carrier thread.",
+					this.server.getPinnedCount());
+	}
+
+	private void renderLimits(StringBuilder out) {
+		RateLimiter limiter = this.server.getRateLimiter();
+		gauge(out, "sws_rate_limit_requests_per_second",
+				"Requests per second a client may make.", limiter.getRate());
+		gauge(out, "sws_rate_limit_burst", "Requests a client may make at once.",
+				limiter.getBurst());
+		gauge(out, "sws_rate_limited_addresses",
+				"Client addresses the rate limiter tracks.",
+				limiter.getAddressCount());
+		gauge(out, "sws_banned_clients", "Clients banned for going over the rate.",
+				this.server.getBanCount());
+	}
+
+	/**
+	 * Renders the buckets, sum and count of one histogram.
+	 */
+	private static void histogram(StringBuilder out, String name,
+			String label, String value, LatencyHistogram.Snapshot snapshot) {
+		String labels = label == null ? "" : label + "=\"" + escape(value)
+				+ "\",";
+		for (int i = 0; i < BOUNDS.length; i++) {
+			out.append(name).append("_bucket{").append(labels).append("le=\"")
+					.append(BOUND_LABELS[i]).append("\"} ")
+					.append(snapshot.getCountAtOrBelow(BOUNDS[i])).append('\n');
+		}
+		out.append(name).append("_bucket{").append(labels)
+				.append("le=\"+Inf\"} ").append(snapshot.getCount())
+				.append('\n');
+		String braces = label == null ? "" : "{" + labels.substring(0,
+				labels.length() - 1) + "}";
+		out.append(name).append("_sum").append(braces).append(' ')
+				.append(snapshot.getTotalNanos() / 1e9).append('\n');
+		out.append(name).append("_count").append(braces).append(' ')
+				.append(snapshot.getCount()).append('\n');
+	}
+
+	private static void counter(StringBuilder out, String name, String help,
+			long value) {
+		header(out, name, "counter", help);
+		out.append(name).append(' ').append(value).append('\n');
+	}
+
+	private static void gauge(StringBuilder out, String name, String help,
+			double value) {
+		header(out, name, "gauge", help);
+		out.append(name).append(' ');
+		if (value == Math.rint(value) && Math.abs(value) < 1e15)
+			out.append((long) value);
+		else
+			out.append(value);
+		out.append('\n');
+	}
+
+	private static void header(StringBuilder out, String name, String type,
+			String help) {
+		out.append("# HELP ").append(name).append(' ').append(help)
+				.append('\n');
+		out.append("# TYPE ").append(name).append(' ').append(type)
+				.append('\n');
+	}
+
+	/**
+	 * Escapes a label value: backslashes, double quotes and line feeds.
+	 */
+	private static String escape(String value) {
+		StringBuilder escaped = null;
+		for (int i = 0; i < value.length(); i++) {
+			char c = value.charAt(i);
+			if (c != '\\' && c != '"' && c != '\n') {
+				if (escaped != null)
+					escaped.append(c);
+				continue;
+			}
+			if (escaped == null)
+				escaped = new StringBuilder(value.substring(0, i));
+			escaped.append('\\').append(c == '\n' ? 'n' : c);
+		}
+		return escaped == null ? value : escaped.toString();
+	}
+}
@@ -0,0 +1,235 @@
+/*
+ * WorkerPool.java
+ * Oct 17, 2026
+ *
+ * Simple Web Server (SWS) for CSSE 477
+ *
+ * Copyright (C) 2012 Chandan Raj Rupakheti
+ *
+ * This program is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation, either
+ * version 3 of the License, or any later version.
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/lgpl.html>.
+ *
+ */
+
+package server;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import protocol.HttpResponseFactory;
+import protocol.Protocol;
+
+/**
+ * A fixed number of worker threads with a bounded queue of waiting
+ * connections in front of them. When the queue is full, the connection is
+ * answered right away with a 503 Service Unavailable carrying a Retry-After
+ * header and closed, so a traffic spike is shed instead of piling up threads.
+ * <p>
+ * A worker only holds a connection while a request is being read and
+ * answered. Between requests a keep-alive connection waits in
+ * {@link IdleConnections} and is queued again once its next request
+ * arrives, so idle clients cannot take up all workers.
+ */
+public class WorkerPool {
+	/**
+	 * Remembers when a handler was queued so its wait can be measured.
+	 */
+	private class QueuedHandler implements Runnable {
+		private ConnectionHandler handler;
+		private long queued;
+
+		public QueuedHandler(ConnectionHandler handler) {
+			this.handler = handler;
+			this.queued = System.nanoTime();
+		}
+
+		public void run() {
+			totalQueueWait.add(System.nanoTime() - this.queued);
+			dequeued.increment();
+			this.handler.run();
+		}
+	}
+
+	private ThreadPoolExecutor executor;
+	private IdleConnections idle;
+	private ServerCounters counters;
+	private int retryAfter;
+
+	// Every worker updates these, so they are striped
+	private LongAdder rejected;
+	private LongAdder totalQueueWait;
+	private LongAdder dequeued;
+
+	private volatile byte[] rejection;
+	private volatile long rejectionSecond;
+
+	/**
+	 * @param workers The number of worker threads.
+	 * @param queueDepth The number of connections that may wait for a worker.
+	 * @param retryAfter Seconds a rejected client is asked to wait.
+	 * @param counters The counters of the server, which count rejected
+	 *            connections along with those the pool tracks itself.
+	 * @throws IOException If the idle connections cannot be watched.
+	 */
+	public WorkerPool(int workers, int queueDepth, int retryAfter,
+			ServerCounters counters) throws IOException {
+		this.executor = new ThreadPoolExecutor(workers, workers, 0L,
+				TimeUnit.MILLISECONDS, new ArrayBlockingQueue<Runnable>(
+						queueDepth));
+		this.retryAfter = retryAfter;
+		this.counters = counters;
+		this.rejected = new LongAdder();
+		this.totalQueueWait = new LongAdder();
+		this.dequeued = new LongAdder();
+		this.executor.prestartAllCoreThreads();
+		this.idle = new IdleConnections(this);
+		this.idle.start();
+	}
+
+	/**
+	 * Queues the handler for a worker, or rejects its connection with a 503
+	 * if the queue is full. That goes for new connections and for
+	 * keep-alive connections whose next request arrived alike.
+	 *
+	 * @param handler The handler for an accepted connection.
+	 * @return <tt>false</tt> if the connection was rejected
+	 */
+	public boolean execute(ConnectionHandler handler) {
+		handler.pool = this;
+		try {
+			this.executor.execute(new QueuedHandler(handler));
+			return true;
+		} catch (RejectedExecutionException e) {
+			reject(handler.getSocket());
+			return false;
+		}
+	}
+
+	/**
+	 * Keeps a connection that has been answered until its next request
+	 * arrives, without holding up a worker.
+	 *
+	 * @param handler The handler of the connection.
+	 */
+	void park(ConnectionHandler handler) {
+		this.idle.park(handler);
+	}
+
+	/**
+	 * Sends the pre-rendered 503 response and closes the connection. The
+	 * response is tiny, so this does not hold up the accept thread. The
+	 * request is not read, but what of it has arrived is discarded, since
+	 * closing a socket with unread input resets the connection and the
+	 * client might lose the 503.
+	 */
+	private void reject(Socket socket) {
+		this.rejected.increment();
+		this.counters.rejected();
+		try {
+			OutputStream out = socket.getOutputStream();
+			out.write(getRejection());
+			out.flush();
+			socket.shutdownOutput();
+			InputStream in = socket.getInputStream();
+			int available;
+			while ((available = in.available()) > 0) {
+				in.skip(available);
+			}
+		} catch (IOException e) {
+			// The client is gone already, nothing to tell it
+		} finally {
+			try {
+				socket.close();
+			} catch (IOException e) {
+				e.printStackTrace();
+			}
+		}
+	}
+
+	/**
+	 * Gets the bytes of the 503 response. They are rendered again at most
+	 * once per second so the Date header stays correct.
+	 */
+	private byte[] getRejection() {
+		long second = System.currentTimeMillis() / 1000L;
+		byte[] bytes = this.rejection;
+		if (bytes == null || second != this.rejectionSecond) {
+			ByteArrayOutputStream out = new ByteArrayOutputStream();
+			try {
+				HttpResponseFactory.create503ServiceUnavailable(Protocol.CLOSE,
+						this.retryAfter).write(out, null);
+			} catch (Exception e) {
+				e.printStackTrace();
+			}
+			bytes = out.toByteArray();
+			this.rejection = bytes;
+			this.rejectionSecond = second;
+		}
+		return bytes;
+	}
+
+	/**
+	 * Gets the number of connections waiting for a worker.
+	 *
+	 * @return the queue depth
+	 */
+	public int getQueueDepth() {
+		return this.executor.getQueue().size();
+	}
+
+	/**
+	 * Gets the number of workers currently handling a connection.
+	 *
+	 * @return the number of busy workers
+	 */
+	public int getActiveWorkers() {
+		return this.executor.getActiveCount();
+	}
+
+	/**
+	 * Gets the number of connections turned away with a 503.
+	 *
+	 * @return the rejection count
+	 */
+	public long getRejectedCount() {
+		return this.rejected.sum();
+	}
+
+	/**
+	 * Gets the average time a connection waited in the queue before a worker
+	 * picked it up.
+	 *
+	 * @return the average queue wait in milliseconds
+	 */
+	public double getAverageQueueWait() {
+		long count = this.dequeued.sum();
+		if (count == 0)
+			return 0;
+		return this.totalQueueWait.sum() / (double) count / 1000000.0;
+	}
+
+	/**
+	 * Stops taking new connections. Queued connections are still handled,
+	 * idle ones are closed.
+	 */
+	public void shutdown() {
+		this.idle.shutdown();
+		this.executor.shutdown();
+	}
+}